@@ -0,0 +1,7 @@
+#!/usr/bin/env bash
+
+sh build.sh
+
+(cd benchmarks && mvn clean package)
+
+java -jar benchmarks/target/benchmarks.jar "$@"
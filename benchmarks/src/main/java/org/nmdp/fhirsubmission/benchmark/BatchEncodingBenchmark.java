@@ -0,0 +1,98 @@
+package org.nmdp.fhirsubmission.benchmark;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import org.apache.http.entity.StringEntity;
+import org.nmdp.fhirsubmission.http.JsonEntity;
+import org.nmdp.fhirsubmission.util.ResourceBundler;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding step of {@code Post.sendBatchPost}: the streaming {@link JsonEntity} against the
+ * String + {@code replaceAll} + {@link StringEntity} path it replaced. Both write every bundle of
+ * the message to a counting sink.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchEncodingBenchmark {
+
+    private static final Gson GSON = new GsonBuilder().create();
+    private static final String DOUBLE_QUOTE = "\"";
+    private static final String BACKSLASH = "\\\\";
+    private static final String OPENING_BRACKET = "\\{";
+
+    private JsonArray bundles;
+
+    @Setup
+    public void setUp(MessageState state) {
+        ResourceBundler bundler = new ResourceBundler();
+
+        try {
+            bundles = bundler.serialize(state.message);
+        } finally {
+            bundler.close();
+        }
+    }
+
+    @Benchmark
+    public long streamingEntity() throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+
+        for (JsonElement bundle : bundles) {
+            new JsonEntity(bundle).writeTo(out);
+        }
+
+        return out.getCount();
+    }
+
+    @Benchmark
+    public long regexUnescape() throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+
+        for (JsonElement bundle : bundles) {
+            String jsonString = GSON.toJson(bundle);
+            String jsonFormattedString = jsonString
+                    .replaceAll(String.format("%s%s%s%s", DOUBLE_QUOTE, OPENING_BRACKET, BACKSLASH, DOUBLE_QUOTE),
+                            String.format("%s%s", OPENING_BRACKET, DOUBLE_QUOTE));
+            jsonFormattedString = jsonFormattedString
+                    .replaceAll(String.format("}%s", DOUBLE_QUOTE), "}");
+            jsonFormattedString = jsonFormattedString
+                    .replaceAll(String.format("%s%s", BACKSLASH, DOUBLE_QUOTE), DOUBLE_QUOTE);
+
+            new StringEntity(jsonFormattedString).writeTo(out);
+        }
+
+        return out.getCount();
+    }
+}
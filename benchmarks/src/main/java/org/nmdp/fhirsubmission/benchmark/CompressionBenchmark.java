@@ -0,0 +1,95 @@
+package org.nmdp.fhirsubmission.benchmark;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import org.apache.http.client.entity.GzipCompressingEntity;
+import org.nmdp.fhirsubmission.http.JsonEntity;
+import org.nmdp.fhirsubmission.util.ResourceBundler;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU cost of gzip request compression against the bytes it saves. Both benchmarks write every
+ * bundle of the message to a counting sink; the {@code bytesPerOp} counter reports what would
+ * have gone over the wire for the whole message.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompressionBenchmark {
+
+    private JsonArray bundles;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class WireBytes {
+        public long bytesPerOp;
+    }
+
+    @Setup
+    public void setUp(MessageState state) {
+        ResourceBundler bundler = new ResourceBundler();
+
+        try {
+            bundles = bundler.serialize(state.message);
+        } finally {
+            bundler.close();
+        }
+    }
+
+    @Benchmark
+    public long identity(WireBytes wire) throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+
+        for (JsonElement bundle : bundles) {
+            new JsonEntity(bundle).writeTo(out);
+        }
+
+        wire.bytesPerOp = out.getCount();
+
+        return out.getCount();
+    }
+
+    @Benchmark
+    public long gzip(WireBytes wire) throws IOException {
+        long count = 0;
+
+        for (JsonElement bundle : bundles) {
+            CountingOutputStream out = new CountingOutputStream();
+
+            new GzipCompressingEntity(new JsonEntity(bundle)).writeTo(out);
+            count += out.getCount();
+        }
+
+        wire.bytesPerOp = count;
+
+        return count;
+    }
+}
@@ -0,0 +1,111 @@
+package org.nmdp.fhirsubmission.benchmark;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import com.google.gson.JsonArray;
+import org.nmdp.fhirsubmission.object.FhirSubmissionResponse;
+import org.nmdp.fhirsubmission.object.TransactionResponse;
+import org.nmdp.fhirsubmission.util.ResourceBundler;
+import org.nmdp.fhirsubmission.util.SubmissionJournal;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Journaling cost of one patient transaction from several sender threads: its pending, sent,
+ * chunk-acknowledged and acknowledged records. {@code group} leaves fsync to the journal's background thread,
+ * {@code perTransaction} forces the journal after every acknowledgement. Each iteration starts
+ * from an empty journal file.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class JournalBenchmark {
+
+    @Param({ "group", "perTransaction" })
+    public String sync;
+
+    private byte[] transaction;
+    private TransactionResponse results;
+    private Path path;
+    private SubmissionJournal journal;
+
+    @Setup(Level.Trial)
+    public void setUpTransaction() throws IOException {
+        WorkloadProfile profile = new WorkloadProfile();
+        ResourceBundler bundler = new ResourceBundler(1);
+
+        profile.setPatientCount(1);
+
+        try {
+            JsonArray bundles = bundler.serialize(new WorkloadGenerator(profile).message());
+            transaction = bundles.toString().getBytes(StandardCharsets.UTF_8);
+        } finally {
+            bundler.close();
+        }
+
+        results = new TransactionResponse();
+        results.addResult("urn:uuid:00000000-0000-4000-8000-000000000000",
+                new FhirSubmissionResponse("1", "Patient/1/_history/1", true));
+        path = Files.createTempFile("fhir-journal", ".bin");
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpJournal() throws IOException {
+        Files.deleteIfExists(path);
+        journal = new SubmissionJournal(path, "group".equals(sync) ? SubmissionJournal.DEFAULT_SYNC_MILLIS : 0);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDownJournal() throws IOException {
+        journal.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    @Benchmark
+    public long journal() throws IOException {
+        long id = journal.pending(transaction);
+
+        journal.sent(id);
+        journal.chunkAcknowledged(id, 0, results);
+        journal.acknowledged(id);
+
+        if ("perTransaction".equals(sync)) {
+            journal.sync();
+        }
+
+        return id;
+    }
+}
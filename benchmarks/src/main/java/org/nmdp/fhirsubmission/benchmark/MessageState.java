@@ -0,0 +1,64 @@
+package org.nmdp.fhirsubmission.benchmark;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import org.nmdp.hmlfhirconvertermodels.domain.fhir.FhirMessage;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Message shape shared by the benchmarks.
+ */
+@State(Scope.Benchmark)
+public class MessageState {
+
+    @Param({ "1", "100", "1000" })
+    public int patientsPerMessage;
+
+    @Param({ "1", "3" })
+    public int specimensPerPatient;
+
+    @Param({ "2", "6" })
+    public int observationsPerSpecimen;
+
+    @Param({ "100", "3000" })
+    public int sequenceLength;
+
+    public FhirMessage message;
+
+    @Setup
+    public void setUp() {
+        WorkloadProfile profile = new WorkloadProfile();
+
+        profile.setPatientCount(patientsPerMessage);
+        profile.setMinSpecimensPerPatient(specimensPerPatient);
+        profile.setMaxSpecimensPerPatient(specimensPerPatient);
+        profile.setMinObservationsPerSpecimen(observationsPerSpecimen);
+        profile.setMaxObservationsPerSpecimen(observationsPerSpecimen);
+        profile.setMinSequenceLength(sequenceLength);
+        profile.setMaxSequenceLength(sequenceLength);
+        message = new WorkloadGenerator(profile).message();
+    }
+}
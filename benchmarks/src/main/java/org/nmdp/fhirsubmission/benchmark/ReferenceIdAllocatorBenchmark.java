@@ -0,0 +1,80 @@
+package org.nmdp.fhirsubmission.benchmark;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import org.nmdp.fhirsubmission.util.NameBasedReferenceIdAllocator;
+import org.nmdp.fhirsubmission.util.RandomReferenceIdAllocator;
+import org.nmdp.fhirsubmission.util.ReferenceIdAllocator;
+import org.nmdp.fhirsubmission.util.SecureRandomReferenceIdAllocator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reference id allocation under contention: every thread allocates from one shared allocator,
+ * as the bundler workers do. Run with {@code -t} to vary the thread count.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class ReferenceIdAllocatorBenchmark {
+
+    @Param({ "random", "nameBased", "secureRandom" })
+    public String allocator;
+
+    private ReferenceIdAllocator idAllocator;
+
+    @State(Scope.Thread)
+    public static class Names {
+        private final String prefix = "Patient/http://example.org/donor*" + Thread.currentThread().getId() + "/Observation/";
+        private int counter;
+
+        String next() {
+            return prefix + counter++;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        switch (allocator) {
+            case "nameBased":
+                idAllocator = new NameBasedReferenceIdAllocator();
+                break;
+            case "secureRandom":
+                idAllocator = new SecureRandomReferenceIdAllocator();
+                break;
+            default:
+                idAllocator = new RandomReferenceIdAllocator();
+        }
+    }
+
+    @Benchmark
+    public UUID allocate(Names names) {
+        return idAllocator.allocate(names.next());
+    }
+}
@@ -0,0 +1,99 @@
+package org.nmdp.fhirsubmission.benchmark;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.nmdp.fhirsubmission.object.BundleSubmission;
+import org.nmdp.fhirsubmission.util.ResourceBundler;
+import org.nmdp.hmlfhirconvertermodels.domain.fhir.Patient;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bundling hot paths: the whole {@link ResourceBundler#serialize} pipeline and its assembly stage,
+ * {@link ResourceBundler#combine}, on its own.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResourceBundlerBenchmark {
+
+    private ResourceBundler bundler;
+
+    @Setup
+    public void setUp() {
+        bundler = new ResourceBundler();
+    }
+
+    @TearDown
+    public void tearDown() {
+        bundler.close();
+    }
+
+    @Benchmark
+    public JsonArray serialize(MessageState state) {
+        return bundler.serialize(state.message);
+    }
+
+    /**
+     * {@code combine} edits the serialized trees in place, so every invocation gets freshly
+     * serialized input; only the assembly step is measured.
+     */
+    @Benchmark
+    public void combine(CombineState state, Blackhole blackhole) {
+        for (BundleSubmission submission : state.submissions) {
+            JsonObject bundle = bundler.combine(submission);
+            blackhole.consume(bundle);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class CombineState {
+
+        private final ResourceBundler bundler = new ResourceBundler(1);
+
+        List<BundleSubmission> submissions;
+
+        @Setup(Level.Invocation)
+        public void setUp(MessageState state) {
+            submissions = new ArrayList<>();
+
+            for (Patient patient : state.message.getPatients().getPatients()) {
+                submissions.add(bundler.serializePatient(patient));
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            bundler.close();
+        }
+    }
+}
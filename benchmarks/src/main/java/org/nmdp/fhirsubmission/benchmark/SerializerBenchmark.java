@@ -0,0 +1,124 @@
+package org.nmdp.fhirsubmission.benchmark;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.stream.JsonWriter;
+import org.nmdp.fhirsubmission.serialization.SerializerRegistry;
+import org.nmdp.hmlfhirconvertermodels.domain.fhir.Observation;
+import org.nmdp.hmlfhirconvertermodels.domain.fhir.Patient;
+import org.nmdp.hmlfhirconvertermodels.domain.fhir.Sequence;
+import org.nmdp.hmlfhirconvertermodels.domain.fhir.Specimen;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-resource cost of each {@code *JsonSerializer} (tree, as used by the bundler) and of its
+ * {@code StreamingJsonSerializer} counterpart (as used by {@code Post}).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializerBenchmark {
+
+    private static final SerializerRegistry SERIALIZERS = SerializerRegistry.getInstance();
+
+    private Patient patient;
+    private Specimen specimen;
+    private Observation observation;
+    private Sequence sequence;
+    private JsonWriter writer;
+
+    @Setup
+    public void setUp(MessageState state) {
+        patient = state.message.getPatients().getPatients().get(0);
+        specimen = patient.getSpecimens().getSpecimens().get(0);
+        observation = specimen.getObservations().getObservations().get(0);
+        sequence = observation.getSequences().getSequences().get(0);
+        writer = new JsonWriter(new DiscardingWriter());
+        writer.setLenient(true);
+    }
+
+    @Benchmark
+    public JsonElement patientTree() {
+        return SERIALIZERS.getPatientConverter().toJsonTree(patient);
+    }
+
+    @Benchmark
+    public void patientStream() {
+        stream(SERIALIZERS.getStreamingConverter(Patient.class, SERIALIZERS.getPatientSerializer()), patient, Patient.class);
+    }
+
+    @Benchmark
+    public JsonElement specimenTree() {
+        return SERIALIZERS.getSpecimenConverter().toJsonTree(specimen);
+    }
+
+    @Benchmark
+    public void specimenStream() {
+        stream(SERIALIZERS.getStreamingConverter(Specimen.class, SERIALIZERS.getSpecimenSerializer()), specimen, Specimen.class);
+    }
+
+    @Benchmark
+    public JsonElement diagnosticReportTree() {
+        return SERIALIZERS.getDiagnosticReportConverter().toJsonTree(specimen);
+    }
+
+    @Benchmark
+    public void diagnosticReportStream() {
+        stream(SERIALIZERS.getStreamingConverter(Specimen.class, SERIALIZERS.getDiagnosticReportSerializer()), specimen, Specimen.class);
+    }
+
+    @Benchmark
+    public JsonElement observationTree() {
+        return SERIALIZERS.getObservationConverter().toJsonTree(observation);
+    }
+
+    @Benchmark
+    public void observationStream() {
+        stream(SERIALIZERS.getStreamingConverter(Observation.class, SERIALIZERS.getObservationSerializer()), observation, Observation.class);
+    }
+
+    @Benchmark
+    public JsonElement sequenceTree() {
+        return SERIALIZERS.getSequenceConverter().toJsonTree(sequence);
+    }
+
+    @Benchmark
+    public void sequenceStream() {
+        stream(SERIALIZERS.getStreamingConverter(Sequence.class, SERIALIZERS.getSequenceSerializer()), sequence, Sequence.class);
+    }
+
+    /**
+     * Each resource is written as a top-level value of a lenient writer, so one writer can be
+     * reused across invocations.
+     */
+    private <T> void stream(Gson converter, T src, Class<T> clazz) {
+        converter.toJson(src, clazz, writer);
+    }
+}
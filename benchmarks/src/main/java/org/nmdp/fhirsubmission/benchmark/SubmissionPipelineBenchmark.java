@@ -0,0 +1,97 @@
+package org.nmdp.fhirsubmission.benchmark;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import org.nmdp.fhirsubmission.benchmark.emulator.FaultProfile;
+import org.nmdp.fhirsubmission.benchmark.emulator.FhirServerEmulator;
+import org.nmdp.fhirsubmission.object.SubmissionConfiguration;
+import org.nmdp.fhirsubmission.util.FhirMessageUtil;
+import org.nmdp.hmlfhirconvertermodels.domain.fhir.FhirMessage;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heap needed to submit a large message to a local {@link FhirServerEmulator}, run with
+ * {@link PeakHeapProfiler} attached. {@code bounded} uses the configured limits on pending
+ * patients and bytes; {@code unbounded} lifts both, so bundling runs ahead of the server and the
+ * whole message ends up serialized at once, which is how submissions behaved before the budget.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+@State(Scope.Benchmark)
+public class SubmissionPipelineBenchmark {
+
+    @Param({ "bounded", "unbounded" })
+    public String pipeline;
+
+    @Param({ "2000" })
+    public int patients;
+
+    @Param({ "5" })
+    public long latencyMillis;
+
+    @Param({ "4194304" })
+    public long maxPendingBytes;
+
+    private FhirMessage message;
+    private FhirServerEmulator emulator;
+    private FhirMessageUtil submission;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        WorkloadProfile profile = new WorkloadProfile();
+        FaultProfile faults = new FaultProfile();
+        SubmissionConfiguration configuration = new SubmissionConfiguration();
+
+        profile.setPatientCount(patients);
+        message = new WorkloadGenerator(profile).message();
+        faults.setLatencyMedianMillis(latencyMillis);
+        emulator = new FhirServerEmulator(faults);
+        configuration.setBaseUrl(emulator.getBaseUrl());
+
+        if ("bounded".equals(pipeline)) {
+            configuration.setMaxPendingBytes(maxPendingBytes);
+        } else {
+            configuration.setMaxPendingPatients(Integer.MAX_VALUE);
+            configuration.setMaxPendingBytes(Long.MAX_VALUE);
+        }
+
+        submission = new FhirMessageUtil(configuration);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        submission.close();
+        emulator.close();
+    }
+
+    @Benchmark
+    public org.nmdp.hmlfhirmongo.models.FhirSubmission submit() throws Exception {
+        return submission.submit(message);
+    }
+}
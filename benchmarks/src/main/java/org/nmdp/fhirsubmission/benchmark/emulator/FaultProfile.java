@@ -0,0 +1,124 @@
+package org.nmdp.fhirsubmission.benchmark.emulator;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+/**
+ * Latency and failure behaviour of {@link FhirServerEmulator}. Latency is log-normal around
+ * {@code latencyMedianMillis}; each rate is the probability that a request gets that outcome
+ * instead of being processed.
+ */
+public class FaultProfile {
+
+    private long seed;
+    private long latencyMedianMillis;
+    private double latencySigma;
+    private double tooManyRequestsRate;
+    private int retryAfterSeconds;
+    private double serviceUnavailableRate;
+    private double dropConnectionRate;
+    private boolean strictReferences;
+
+    public FaultProfile() {
+        this.seed = 20171011L;
+        this.latencyMedianMillis = 0;
+        this.latencySigma = 0.5;
+        this.retryAfterSeconds = 1;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public long getLatencyMedianMillis() {
+        return latencyMedianMillis;
+    }
+
+    public void setLatencyMedianMillis(long latencyMedianMillis) {
+        this.latencyMedianMillis = latencyMedianMillis;
+    }
+
+    /**
+     * Spread of the log-normal latency; 0 gives a constant latency, 1 a long tail.
+     */
+    public double getLatencySigma() {
+        return latencySigma;
+    }
+
+    public void setLatencySigma(double latencySigma) {
+        this.latencySigma = latencySigma;
+    }
+
+    public double getTooManyRequestsRate() {
+        return tooManyRequestsRate;
+    }
+
+    public void setTooManyRequestsRate(double tooManyRequestsRate) {
+        this.tooManyRequestsRate = tooManyRequestsRate;
+    }
+
+    /**
+     * Value of the {@code Retry-After} header sent with 429 and 503 responses.
+     */
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    public void setRetryAfterSeconds(int retryAfterSeconds) {
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public double getServiceUnavailableRate() {
+        return serviceUnavailableRate;
+    }
+
+    public void setServiceUnavailableRate(double serviceUnavailableRate) {
+        this.serviceUnavailableRate = serviceUnavailableRate;
+    }
+
+    /**
+     * Probability that the connection is closed without any response being written.
+     */
+    public double getDropConnectionRate() {
+        return dropConnectionRate;
+    }
+
+    public void setDropConnectionRate(double dropConnectionRate) {
+        this.dropConnectionRate = dropConnectionRate;
+    }
+
+    /**
+     * When set, a transaction that references a {@code urn:uuid} not defined in the same Bundle is
+     * rejected with 400, as a real server would; otherwise it is only counted.
+     */
+    public boolean isStrictReferences() {
+        return strictReferences;
+    }
+
+    public void setStrictReferences(boolean strictReferences) {
+        this.strictReferences = strictReferences;
+    }
+}
@@ -0,0 +1,499 @@
+package org.nmdp.fhirsubmission.benchmark.emulator;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * In-process stand-in for a DSTU3 FHIR server, for load tests that need something local to post
+ * to. It accepts {@code Bundle} transactions and single {@code Patient}, {@code Specimen},
+ * {@code Observation}, {@code DiagnosticReport} and {@code Sequence} creates, assigns server ids,
+ * resolves {@code urn:uuid} references inside a transaction and answers with a
+ * transaction-response Bundle or a {@code Location} header. Resources are counted, not stored;
+ * only their {@code identifier}s are kept, so that {@code identifier=} conditional creates are
+ * evaluated against what was actually submitted.
+ * <p>
+ * Latency, 429 and 503 responses and dropped connections are injected according to a
+ * {@link FaultProfile}.
+ */
+public class FhirServerEmulator implements Closeable {
+
+    private static final String BUNDLE = "Bundle";
+    private static final List<String> RESOURCE_TYPES =
+            Arrays.asList("Patient", "Specimen", "Observation", "DiagnosticReport", "Sequence");
+    private static final String URN_PREFIX = "urn:uuid:";
+    private static final String ENTRY_KEY = "entry";
+    private static final String RESOURCE_KEY = "resource";
+    private static final String FULL_URL_KEY = "fullUrl";
+    private static final String REQUEST_KEY = "request";
+    private static final String RESPONSE_KEY = "response";
+    private static final String URL_KEY = "url";
+    private static final String REFERENCE_KEY = "reference";
+    private static final String STATUS_KEY = "status";
+    private static final String LOCATION_KEY = "location";
+    private static final String HISTORY_SUFFIX = "/_history/1";
+    private static final String CREATED = "201 Created";
+    private static final String MATCHED = "200 OK";
+    private static final String IF_NONE_EXIST_KEY = "ifNoneExist";
+    private static final String IF_NONE_EXIST_HEADER = "If-None-Exist";
+    private static final String IDENTIFIER_KEY = "identifier";
+    private static final String SYSTEM_KEY = "system";
+    private static final String VALUE_KEY = "value";
+    private static final String IDENTIFIER_PARAMETER = "identifier=";
+    private static final String TOKEN_SEPARATOR = "|";
+    private static final String ANY_SYSTEM = "*";
+    private static final String POST = "POST";
+    private static final String CONTENT_TYPE = "application/fhir+json;charset=UTF-8";
+    private static final String GZIP = "gzip";
+    private static final int STOP_DELAY_SECONDS = 0;
+
+    static {
+        // the JDK server leaves Nagle on, which adds a delayed-ACK stall to every small response
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final FaultProfile faults;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final String baseUrl;
+    private final AtomicLong ids = new AtomicLong();
+    private final Random random;
+    private final Map<String, LongAdder> resourcesCreated = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> resourcesMatched = new ConcurrentHashMap<>();
+    private final Map<String, String> identifiers = new HashMap<>();
+    private final Map<Integer, LongAdder> responsesByStatus = new ConcurrentHashMap<>();
+    private final LongAdder droppedConnections = new LongAdder();
+    private final LongAdder unresolvedReferences = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+
+    public FhirServerEmulator(FaultProfile faults) throws IOException {
+        this.faults = faults;
+        this.random = new Random(faults.getSeed());
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "fhir-emulator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.baseUrl = String.format("http://127.0.0.1:%d/baseDstu3/", server.getAddress().getPort());
+
+        server.createContext("/baseDstu3/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Base URL to configure the submission with, including the trailing slash.
+     */
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public long getResourcesCreated(String resourceType) {
+        LongAdder count = resourcesCreated.get(resourceType);
+        return count == null ? 0 : count.sum();
+    }
+
+    /**
+     * Conditional creates answered with an existing resource instead of a new one.
+     */
+    public long getResourcesMatched(String resourceType) {
+        LongAdder count = resourcesMatched.get(resourceType);
+        return count == null ? 0 : count.sum();
+    }
+
+    public long getResponses(int status) {
+        LongAdder count = responsesByStatus.get(status);
+        return count == null ? 0 : count.sum();
+    }
+
+    public long getDroppedConnections() {
+        return droppedConnections.sum();
+    }
+
+    public long getUnresolvedReferences() {
+        return unresolvedReferences.sum();
+    }
+
+    /**
+     * Request body bytes as they came off the wire, before any gzip decoding.
+     */
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    @Override
+    public void close() {
+        server.stop(STOP_DELAY_SECONDS);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            String resourceType = path.substring(path.lastIndexOf('/') + 1);
+            JsonElement body = readBody(exchange);
+
+            sleep(latency());
+
+            if (!POST.equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, null);
+            } else if (roll(faults.getDropConnectionRate())) {
+                droppedConnections.increment();
+            } else if (roll(faults.getTooManyRequestsRate())) {
+                retryLater(exchange, 429);
+            } else if (roll(faults.getServiceUnavailableRate())) {
+                retryLater(exchange, 503);
+            } else if (BUNDLE.equals(resourceType)) {
+                transaction(exchange, body);
+            } else if (RESOURCE_TYPES.contains(resourceType)) {
+                String condition = exchange.getRequestHeaders().getFirst(IF_NONE_EXIST_HEADER);
+                boolean[] created = new boolean[1];
+                String location = create(resourceType, body, condition, created);
+                exchange.getResponseHeaders().add("Location", baseUrl + location);
+                respond(exchange, created[0] ? 201 : 200, operationOutcome((created[0] ? "Created " : "Matched ") + location));
+            } else {
+                respond(exchange, 404, operationOutcome("Unknown resource type " + resourceType));
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Processes a transaction Bundle: every entry gets a server id first, then every
+     * {@code urn:uuid} reference is checked against the ids assigned in this Bundle. Entries
+     * with an {@code ifNoneExist} search that an earlier create already satisfied are matched
+     * to that resource.
+     */
+    private void transaction(HttpExchange exchange, JsonElement body) throws IOException {
+        JsonArray entries = body.getAsJsonObject().getAsJsonArray(ENTRY_KEY);
+        Map<String, String> assigned = new HashMap<>();
+        List<String> locations = new ArrayList<>();
+        List<Boolean> created = new ArrayList<>();
+        int unresolved = 0;
+
+        for (JsonElement element : entries) {
+            JsonObject entry = element.getAsJsonObject();
+            JsonObject request = entry.getAsJsonObject(REQUEST_KEY);
+            String resourceType = request.get(URL_KEY).getAsString();
+            String condition = request.has(IF_NONE_EXIST_KEY) ? request.get(IF_NONE_EXIST_KEY).getAsString() : null;
+            boolean[] wasCreated = new boolean[1];
+            String location = create(resourceType, entry.get(RESOURCE_KEY), condition, wasCreated);
+            locations.add(location);
+            created.add(wasCreated[0]);
+
+            if (entry.has(FULL_URL_KEY)) {
+                assigned.put(entry.get(FULL_URL_KEY).getAsString(), location);
+            }
+        }
+
+        for (JsonElement entry : entries) {
+            unresolved += countUnresolved(entry.getAsJsonObject().get(RESOURCE_KEY), assigned);
+        }
+
+        if (unresolved > 0) {
+            unresolvedReferences.add(unresolved);
+
+            if (faults.isStrictReferences()) {
+                respond(exchange, 400, operationOutcome(unresolved + " unresolved urn:uuid references"));
+                return;
+            }
+        }
+
+        JsonObject response = new JsonObject();
+        JsonArray responseEntries = new JsonArray();
+
+        for (int i = 0; i < locations.size(); i++) {
+            JsonObject entry = new JsonObject();
+            JsonObject entryResponse = new JsonObject();
+
+            entryResponse.addProperty(STATUS_KEY, created.get(i) ? CREATED : MATCHED);
+            entryResponse.addProperty(LOCATION_KEY, locations.get(i) + HISTORY_SUFFIX);
+            entry.add(RESPONSE_KEY, entryResponse);
+            responseEntries.add(entry);
+        }
+
+        response.addProperty("resourceType", BUNDLE);
+        response.addProperty("type", "transaction-response");
+        response.add(ENTRY_KEY, responseEntries);
+        respond(exchange, 200, response);
+    }
+
+    private int countUnresolved(JsonElement element, Map<String, String> assigned) {
+        int unresolved = 0;
+
+        if (element == null || element.isJsonNull() || element.isJsonPrimitive()) {
+            return 0;
+        }
+
+        if (element.isJsonArray()) {
+            for (JsonElement child : element.getAsJsonArray()) {
+                unresolved += countUnresolved(child, assigned);
+            }
+
+            return unresolved;
+        }
+
+        for (Map.Entry<String, JsonElement> member : element.getAsJsonObject().entrySet()) {
+            JsonElement value = member.getValue();
+
+            if (REFERENCE_KEY.equals(member.getKey()) && value.isJsonPrimitive()) {
+                String reference = value.getAsString();
+
+                if (reference.startsWith(URN_PREFIX) && !assigned.containsKey(reference)) {
+                    unresolved++;
+                }
+            } else {
+                unresolved += countUnresolved(value, assigned);
+            }
+        }
+
+        return unresolved;
+    }
+
+    /**
+     * Creates a resource, or with an {@code identifier=} {@code condition} returns the stored
+     * resource of that type whose identifier matches; {@code created[0]} tells which happened.
+     * Other search parameters are not supported and never match.
+     */
+    private String create(String resourceType, JsonElement resource, String condition, boolean[] created) {
+        synchronized (identifiers) {
+            String search = searchKey(resourceType, condition);
+            String location = search == null ? null : identifiers.get(search);
+
+            if (location != null) {
+                resourcesMatched.computeIfAbsent(resourceType, type -> new LongAdder()).increment();
+                return location;
+            }
+
+            created[0] = true;
+            location = create(resourceType);
+            index(resourceType, resource, location);
+
+            return location;
+        }
+    }
+
+    /**
+     * Records the identifiers of a new resource under {@code system|value}, with an empty system
+     * when it has none, and under {@code *|value} for searches without a system.
+     */
+    private void index(String resourceType, JsonElement resource, String location) {
+        if (resource == null || !resource.isJsonObject()) {
+            return;
+        }
+
+        JsonElement identifier = resource.getAsJsonObject().get(IDENTIFIER_KEY);
+        List<JsonElement> ids = new ArrayList<>();
+
+        if (identifier != null && identifier.isJsonArray()) {
+            identifier.getAsJsonArray().forEach(ids::add);
+        } else if (identifier != null && identifier.isJsonObject()) {
+            ids.add(identifier);
+        }
+
+        for (JsonElement id : ids) {
+            JsonObject object = id.getAsJsonObject();
+
+            if (!object.has(VALUE_KEY)) {
+                continue;
+            }
+
+            String system = object.has(SYSTEM_KEY) ? object.get(SYSTEM_KEY).getAsString() : "";
+            String value = object.get(VALUE_KEY).getAsString();
+
+            identifiers.putIfAbsent(token(resourceType, system, value), location);
+            identifiers.putIfAbsent(token(resourceType, ANY_SYSTEM, value), location);
+        }
+    }
+
+    /**
+     * Index key for an {@code identifier=[system|]value} search, or {@code null} for any other
+     * condition.
+     */
+    private String searchKey(String resourceType, String condition) {
+        if (condition == null || !condition.startsWith(IDENTIFIER_PARAMETER)) {
+            return null;
+        }
+
+        String search = condition.substring(IDENTIFIER_PARAMETER.length());
+        int separator = search.indexOf(TOKEN_SEPARATOR);
+
+        if (separator < 0) {
+            return token(resourceType, ANY_SYSTEM, decode(search));
+        }
+
+        return token(resourceType, decode(search.substring(0, separator)), decode(search.substring(separator + 1)));
+    }
+
+    private static String token(String resourceType, String system, String value) {
+        return resourceType + "?" + system + TOKEN_SEPARATOR + value;
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private String create(String resourceType) {
+        resourcesCreated.computeIfAbsent(resourceType, type -> new LongAdder()).increment();
+        return resourceType + "/" + ids.incrementAndGet();
+    }
+
+    private void retryLater(HttpExchange exchange, int status) throws IOException {
+        exchange.getResponseHeaders().add("Retry-After", String.valueOf(faults.getRetryAfterSeconds()));
+        respond(exchange, status, operationOutcome("Injected " + status));
+    }
+
+    private void respond(HttpExchange exchange, int status, JsonObject body) throws IOException {
+        byte[] bytes = body == null ? new byte[0] : body.toString().getBytes(StandardCharsets.UTF_8);
+
+        responsesByStatus.computeIfAbsent(status, code -> new LongAdder()).increment();
+        exchange.getResponseHeaders().add("Content-Type", CONTENT_TYPE);
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+
+        if (bytes.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    private JsonObject operationOutcome(String diagnostics) {
+        JsonObject outcome = new JsonObject();
+        JsonArray issues = new JsonArray();
+        JsonObject issue = new JsonObject();
+
+        issue.addProperty("severity", "information");
+        issue.addProperty("diagnostics", diagnostics);
+        issues.add(issue);
+        outcome.addProperty("resourceType", "OperationOutcome");
+        outcome.add("issue", issues);
+
+        return outcome;
+    }
+
+    private JsonElement readBody(HttpExchange exchange) throws IOException {
+        InputStream in = new CountingInputStream(exchange.getRequestBody(), bytesReceived);
+
+        if (GZIP.equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+            in = new GZIPInputStream(in);
+        }
+
+        try (InputStreamReader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            return new JsonParser().parse(reader);
+        }
+    }
+
+    private long latency() {
+        if (faults.getLatencyMedianMillis() <= 0) {
+            return 0;
+        }
+
+        double gaussian;
+
+        synchronized (random) {
+            gaussian = random.nextGaussian();
+        }
+
+        return Math.round(faults.getLatencyMedianMillis() * Math.exp(faults.getLatencySigma() * gaussian));
+    }
+
+    private boolean roll(double rate) {
+        return rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    private void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private final LongAdder count;
+
+        private CountingInputStream(InputStream in, LongAdder count) {
+            super(in);
+            this.count = count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+
+            if (b >= 0) {
+                count.increment();
+            }
+
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+
+            if (read > 0) {
+                count.add(read);
+            }
+
+            return read;
+        }
+    }
+}
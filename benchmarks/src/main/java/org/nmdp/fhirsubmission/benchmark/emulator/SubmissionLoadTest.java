@@ -0,0 +1,159 @@
+package org.nmdp.fhirsubmission.benchmark.emulator;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import org.nmdp.fhirsubmission.benchmark.WorkloadGenerator;
+import org.nmdp.fhirsubmission.benchmark.WorkloadProfile;
+import org.nmdp.fhirsubmission.http.RetryMetrics;
+import org.nmdp.fhirsubmission.metrics.JmxSubmissionMetrics;
+import org.nmdp.fhirsubmission.object.SubmissionConfiguration;
+import org.nmdp.fhirsubmission.util.FhirMessageUtil;
+import org.nmdp.hmlfhirconvertermodels.domain.fhir.FhirMessage;
+
+import java.util.Arrays;
+
+/**
+ * End-to-end load test against a local {@link FhirServerEmulator}: generates a workload, submits
+ * it repeatedly through the batch and the one-resource-per-request paths and reports throughput
+ * and round latency percentiles, followed by the per-stage metrics of each path and what the
+ * emulator saw. The metrics are also published over JMX while the test runs.
+ * <p>
+ * Usage: {@code SubmissionLoadTest [patients] [rounds] [latencyMedianMillis] [faultRate]}, where
+ * {@code faultRate} is split evenly between 429s, 503s and dropped connections.
+ */
+public class SubmissionLoadTest {
+
+    private static final int DEFAULT_PATIENTS = 100;
+    private static final int DEFAULT_ROUNDS = 20;
+    private static final long DEFAULT_LATENCY_MILLIS = 5;
+    private static final double DEFAULT_FAULT_RATE = 0;
+    private static final int WARMUP_ROUNDS = 3;
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    public static void main(String[] args) throws Exception {
+        int patients = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PATIENTS;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ROUNDS;
+        long latency = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_LATENCY_MILLIS;
+        double faultRate = args.length > 3 ? Double.parseDouble(args[3]) : DEFAULT_FAULT_RATE;
+
+        FaultProfile faults = new FaultProfile();
+        faults.setLatencyMedianMillis(latency);
+        faults.setTooManyRequestsRate(faultRate / 3);
+        faults.setServiceUnavailableRate(faultRate / 3);
+        faults.setDropConnectionRate(faultRate / 3);
+
+        WorkloadProfile profile = new WorkloadProfile();
+        profile.setPatientCount(patients);
+        FhirMessage message = new WorkloadGenerator(profile).message();
+
+        try (FhirServerEmulator emulator = new FhirServerEmulator(faults);
+             JmxSubmissionMetrics metrics = new JmxSubmissionMetrics(SubmissionLoadTest.class.getSimpleName())) {
+            SubmissionConfiguration configuration = new SubmissionConfiguration();
+            configuration.setBaseUrl(emulator.getBaseUrl());
+            configuration.setMetrics(metrics);
+            metrics.register();
+
+            try (FhirMessageUtil submission = new FhirMessageUtil(configuration)) {
+                run("batch", rounds, patients, () -> submission.submit(message));
+                report(metrics);
+                metrics.reset();
+                run("non-batch", rounds, patients, () -> submission.submitNonBatch(message));
+                report(metrics);
+                report(submission.getRetryMetrics());
+            }
+
+            report(emulator);
+        }
+    }
+
+    private static void run(String name, int rounds, int patients, Round round) throws Exception {
+        long[] nanos = new long[rounds];
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            round.submit();
+        }
+
+        long start = System.nanoTime();
+
+        for (int i = 0; i < rounds; i++) {
+            long roundStart = System.nanoTime();
+            round.submit();
+            nanos[i] = System.nanoTime() - roundStart;
+        }
+
+        double seconds = (System.nanoTime() - start) / (NANOS_PER_MILLI * 1000);
+        Arrays.sort(nanos);
+
+        System.out.println(String.format("%-10s %8.1f patients/s  p50 %8.1f ms  p99 %8.1f ms  max %8.1f ms",
+                name, rounds * patients / seconds, percentile(nanos, 0.50), percentile(nanos, 0.99),
+                nanos[rounds - 1] / NANOS_PER_MILLI));
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(index, 0)] / NANOS_PER_MILLI;
+    }
+
+    private static void report(JmxSubmissionMetrics metrics) {
+        metrics.getStageLatencies().forEach((stage, latency) -> {
+            if (latency.getCount() > 0) {
+                System.out.println(String.format("  %-15s %s ms", stage, latency));
+            }
+        });
+
+        System.out.println(String.format("  %-15s %s", "entries/bundle", metrics.getBundleEntries()));
+        System.out.println(String.format("  %-15s %d", "bytes sent", metrics.getBytesSent()));
+        System.out.println(String.format("  %-15s %s", "successes", metrics.getSuccesses()));
+        System.out.println(String.format("  %-15s %s", "failures", metrics.getFailures()));
+        System.out.println(String.format("  %-15s %s", "retries", metrics.getRetries()));
+    }
+
+    private static void report(RetryMetrics metrics) {
+        System.out.println(String.format("attempts          %d", metrics.getAttempts()));
+        System.out.println(String.format("retries           %d (%d after Retry-After)", metrics.getRetries(),
+                metrics.getRetryAfterWaits()));
+        System.out.println(String.format("exhausted         %d", metrics.getExhausted()));
+        System.out.println(String.format("breaker           %s, opened %d, rejected %d", metrics.getBreakerState(),
+                metrics.getBreakerOpenings(), metrics.getBreakerRejections()));
+    }
+
+    private static void report(FhirServerEmulator emulator) {
+        for (String type : Arrays.asList("Patient", "Specimen", "Observation", "DiagnosticReport", "Sequence")) {
+            System.out.println(String.format("%-17s %d created, %d matched", type, emulator.getResourcesCreated(type),
+                    emulator.getResourcesMatched(type)));
+        }
+
+        for (int status : new int[] { 200, 201, 400, 429, 503 }) {
+            System.out.println(String.format("HTTP %d          %d", status, emulator.getResponses(status)));
+        }
+
+        System.out.println(String.format("dropped           %d", emulator.getDroppedConnections()));
+        System.out.println(String.format("unresolved refs   %d", emulator.getUnresolvedReferences()));
+        System.out.println(String.format("bytes received    %d", emulator.getBytesReceived()));
+    }
+
+    @FunctionalInterface
+    private interface Round {
+        void submit() throws Exception;
+    }
+}
@@ -25,11 +25,18 @@ package org.nmdp.fhirsubmission;
  */
 
 import org.nmdp.hmlfhirconvertermodels.domain.fhir.FhirMessage;
+import org.nmdp.hmlfhirconvertermodels.domain.fhir.Patient;
+import org.nmdp.fhirsubmission.object.HmlSubmission;
+import org.nmdp.fhirsubmission.http.RetryMetrics;
+import org.nmdp.fhirsubmission.object.SubmissionConfiguration;
 import org.nmdp.fhirsubmission.util.FhirMessageUtil;
 
+import java.io.Closeable;
+import java.util.Iterator;
 import java.util.List;
+import java.util.function.Consumer;
 
-public class FhirSubmission {
+public class FhirSubmission implements Closeable {
 
 
     private final FhirMessageUtil fhirUtil;
@@ -38,7 +45,49 @@ public class FhirSubmission {
         fhirUtil = new FhirMessageUtil();
     }
 
+    public FhirSubmission(SubmissionConfiguration configuration) {
+        fhirUtil = new FhirMessageUtil(configuration);
+    }
+
     public org.nmdp.hmlfhirmongo.models.FhirSubmission submitPreFhirBundle(FhirMessage fhirMessage) throws Exception {
         return fhirUtil.submit(fhirMessage);
     }
+
+    /**
+     * Streams {@code patients} to the server, pulling each one only when there is room for it,
+     * and hands every patient's result to {@code results} as it completes. Suited to backfills
+     * too large to build as one {@link FhirMessage}.
+     */
+    public org.nmdp.hmlfhirmongo.models.FhirSubmission submitPatients(Iterator<Patient> patients,
+                                                                      Consumer<HmlSubmission> results) throws Exception {
+        return fhirUtil.submitPatients(patients, results);
+    }
+
+    /**
+     * Picks up after a submission that was interrupted, for instance by the JVM dying: resends
+     * the transactions the configured journal holds no acknowledgement for, from the first one
+     * on. Call it once after constructing with the same journal path. Only transactions an
+     * earlier instance journaled are resent; a patient that fails in a submission made through
+     * this instance is reported in that submission's results and has to be submitted again.
+     */
+    public org.nmdp.hmlfhirmongo.models.FhirSubmission resume() throws Exception {
+        return fhirUtil.resume();
+    }
+
+    /**
+     * What the retry layer has done so far: attempts, retries, requests given up on, and the
+     * circuit breaker's state.
+     */
+    public RetryMetrics getRetryMetrics() {
+        return fhirUtil.getRetryMetrics();
+    }
+
+    /**
+     * Releases the serialization workers and pooled connections; bundles already being built are
+     * allowed to finish.
+     */
+    @Override
+    public void close() {
+        fhirUtil.close();
+    }
 }
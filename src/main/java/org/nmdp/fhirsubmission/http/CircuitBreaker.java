@@ -0,0 +1,127 @@
+package org.nmdp.fhirsubmission.http;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops {@link Post} from hammering a server that keeps failing. After
+ * {@code failureThreshold} consecutive failed attempts the breaker opens and requests are held
+ * back for {@code openMillis}; then a single probe is let through, which closes the breaker if
+ * it succeeds and opens it again if it fails.
+ */
+public class CircuitBreaker {
+
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final long DEFAULT_OPEN_MILLIS = 5000;
+
+    private static final int PROBE_WAIT_DIVISOR = 10;
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private State state;
+    private boolean probing;
+    private int consecutiveFailures;
+    private long openedAt;
+    private long timesOpened;
+
+    public CircuitBreaker() {
+        this(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_MILLIS);
+    }
+
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+        this.state = State.CLOSED;
+    }
+
+    /**
+     * Asks to send one request: returns zero if it may go now, otherwise how long to wait before
+     * asking again. Once the open period is over the first caller becomes the probe; the others
+     * keep waiting until it has been answered.
+     */
+    public synchronized long acquire() {
+        switch (state) {
+            case OPEN:
+                long remaining = openMillis - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - openedAt);
+
+                if (remaining > 0) {
+                    return remaining;
+                }
+
+                state = State.HALF_OPEN;
+                probing = true;
+                return 0;
+            case HALF_OPEN:
+                if (!probing) {
+                    probing = true;
+                    return 0;
+                }
+
+                return Math.max(1, openMillis / PROBE_WAIT_DIVISOR);
+            default:
+                return 0;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        probing = false;
+        state = State.CLOSED;
+    }
+
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        probing = false;
+
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+            timesOpened++;
+        }
+    }
+
+    /**
+     * Ends an attempt that says nothing about the server, such as one that failed on the client
+     * before a response arrived. The state is left as it is; if the attempt was the probe, the
+     * next caller probes instead.
+     */
+    public synchronized void onAbandoned() {
+        probing = false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized long getTimesOpened() {
+        return timesOpened;
+    }
+}
@@ -0,0 +1,177 @@
+package org.nmdp.fhirsubmission.http;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicHeaderElementIterator;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+import org.apache.log4j.Logger;
+import org.nmdp.fhirsubmission.util.WorkerThreads;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keep-alive connection pool shared by every request sent through {@link Post}. Connections are
+ * reused across requests, bounded in total and per route, and evicted once idle or expired by a
+ * single daemon thread shared by all pools, which ends once every pool has been closed.
+ * Connecting, waiting for a pooled connection and every read are bounded by timeouts, so a server
+ * that stops answering fails the request, which {@link RetryingClient} and the pool's
+ * {@link CircuitBreaker} can then act on, instead of holding a sender thread forever.
+ */
+public class HttpClientPool implements Closeable {
+
+    public static final int DEFAULT_MAX_TOTAL = 50;
+    public static final int DEFAULT_MAX_PER_ROUTE = 20;
+    public static final long DEFAULT_KEEP_ALIVE_MILLIS = 30000;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60000;
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 10000;
+    public static final int DEFAULT_CONNECTION_REQUEST_TIMEOUT_MILLIS = 30000;
+    public static final int DEFAULT_SOCKET_TIMEOUT_MILLIS = 120000;
+
+    private static final Logger LOG = Logger.getLogger(HttpClientPool.class);
+    private static final String TIMEOUT_PARAM = "timeout";
+    private static final ScheduledExecutorService EVICTOR = WorkerThreads.scheduled("fhir-connection-evictor");
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient client;
+    private final CircuitBreaker breaker;
+    private final ScheduledFuture<?> eviction;
+
+    public HttpClientPool() {
+        this(DEFAULT_MAX_TOTAL, DEFAULT_MAX_PER_ROUTE, DEFAULT_KEEP_ALIVE_MILLIS, DEFAULT_IDLE_TIMEOUT_MILLIS);
+    }
+
+    public HttpClientPool(int maxTotal, int maxPerRoute, long keepAliveMillis, long idleTimeoutMillis) {
+        this(maxTotal, maxPerRoute, keepAliveMillis, idleTimeoutMillis, DEFAULT_CONNECT_TIMEOUT_MILLIS,
+                DEFAULT_CONNECTION_REQUEST_TIMEOUT_MILLIS, DEFAULT_SOCKET_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param connectTimeoutMillis           limit on opening a connection to the server
+     * @param connectionRequestTimeoutMillis limit on waiting for a free connection from the pool
+     * @param socketTimeoutMillis            limit on the silence between two packets of a response
+     */
+    public HttpClientPool(int maxTotal, int maxPerRoute, long keepAliveMillis, long idleTimeoutMillis,
+                          int connectTimeoutMillis, int connectionRequestTimeoutMillis, int socketTimeoutMillis) {
+        long evictionMillis = idleTimeoutMillis > 0 ? idleTimeoutMillis : DEFAULT_IDLE_TIMEOUT_MILLIS;
+
+        this.connectionManager = new PoolingHttpClientConnectionManager();
+        this.connectionManager.setMaxTotal(maxTotal);
+        this.connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        this.client = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy(keepAliveStrategy(keepAliveMillis))
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(connectTimeoutMillis)
+                        .setConnectionRequestTimeout(connectionRequestTimeoutMillis)
+                        .setSocketTimeout(socketTimeoutMillis)
+                        .build())
+                .build();
+        this.breaker = new CircuitBreaker();
+        this.eviction = EVICTOR.scheduleWithFixedDelay(() -> evict(idleTimeoutMillis),
+                evictionMillis, evictionMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Pool used by the static entry points of {@link Post}; created on first use and kept for the
+     * life of the JVM.
+     */
+    public static HttpClientPool getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    public HttpClient getClient() {
+        return client;
+    }
+
+    /**
+     * Breaker shared by every {@link Post} on this pool that is not given one of its own, so that
+     * failures against the server add up across all of them.
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return breaker;
+    }
+
+    @Override
+    public void close() {
+        eviction.cancel(false);
+
+        try {
+            client.close();
+        } catch (IOException ex) {
+            LOG.error(ex);
+        }
+    }
+
+    /**
+     * Closes expired connections and, unless {@code idleTimeoutMillis} is not positive, those idle
+     * for longer than it.
+     */
+    private void evict(long idleTimeoutMillis) {
+        connectionManager.closeExpiredConnections();
+
+        if (idleTimeoutMillis > 0) {
+            connectionManager.closeIdleConnections(idleTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Honors the server's {@code Keep-Alive: timeout=n} header and falls back to
+     * {@code keepAliveMillis} when the server does not send one.
+     */
+    private static ConnectionKeepAliveStrategy keepAliveStrategy(long keepAliveMillis) {
+        return (HttpResponse response, HttpContext context) -> {
+            BasicHeaderElementIterator iterator = new BasicHeaderElementIterator(response.headerIterator(HTTP.CONN_KEEP_ALIVE));
+
+            while (iterator.hasNext()) {
+                HeaderElement element = iterator.nextElement();
+
+                if (TIMEOUT_PARAM.equalsIgnoreCase(element.getName()) && element.getValue() != null) {
+                    try {
+                        return Long.parseLong(element.getValue()) * 1000;
+                    } catch (NumberFormatException ex) {
+                        LOG.warn(ex);
+                    }
+                }
+            }
+
+            return keepAliveMillis;
+        };
+    }
+
+    private static class DefaultHolder {
+        private static final HttpClientPool INSTANCE = new HttpClientPool();
+    }
+}
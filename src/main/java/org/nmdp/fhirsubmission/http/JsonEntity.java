@@ -0,0 +1,114 @@
+package org.nmdp.fhirsubmission.http;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.stream.JsonWriter;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.nmdp.fhirsubmission.serialization.SerializerRegistry;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Request entity that encodes a JSON tree, or an object through a streaming converter, as UTF-8 directly onto the connection's output stream
+ * while the request is being sent. The payload is never materialized as a String, so memory
+ * overhead does not grow with the size of the bundle; the body is sent with chunked transfer
+ * encoding since its length is not known up front.
+ */
+public class JsonEntity extends AbstractHttpEntity {
+
+    private static final Gson GSON = SerializerRegistry.getInstance().getDefaultConverter();
+
+    private final JsonElement json;
+    private final Object data;
+    private final Class<?> clazz;
+    private final Gson converter;
+
+    public JsonEntity(JsonElement json) {
+        this(json, null, null, null);
+    }
+
+    /**
+     * Writes {@code data} with {@code converter} when the request is sent; with a streaming
+     * converter no intermediate tree or String is built.
+     */
+    public <T> JsonEntity(T data, Class<T> clazz, Gson converter) {
+        this(null, data, clazz, converter);
+    }
+
+    private JsonEntity(JsonElement json, Object data, Class<?> clazz, Gson converter) {
+        this.json = json;
+        this.data = data;
+        this.clazz = clazz;
+        this.converter = converter;
+        setContentType(ContentType.APPLICATION_JSON.toString());
+        setChunked(true);
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        writeTo(content);
+
+        return new ByteArrayInputStream(content.toByteArray());
+    }
+
+    @Override
+    public void writeTo(OutputStream outStream) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outStream, StandardCharsets.UTF_8));
+        JsonWriter jsonWriter = new JsonWriter(writer);
+
+        if (json == null) {
+            converter.toJson(data, clazz, jsonWriter);
+        } else {
+            GSON.toJson(json, jsonWriter);
+        }
+
+        jsonWriter.flush();
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+}
@@ -0,0 +1,78 @@
+package org.nmdp.fhirsubmission.http;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.nmdp.fhirsubmission.metrics.SubmissionMetrics;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Times the writing of a request body and counts the bytes that reach the connection. Wrapped
+ * around the outermost entity, compression included, so what is counted is what is sent.
+ */
+class MeteredEntity extends HttpEntityWrapper {
+
+    private final SubmissionMetrics metrics;
+
+    MeteredEntity(HttpEntity entity, SubmissionMetrics metrics) {
+        super(entity);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void writeTo(OutputStream outStream) throws IOException {
+        CountingOutputStream counting = new CountingOutputStream(outStream);
+        long start = System.nanoTime();
+
+        try {
+            super.writeTo(counting);
+        } finally {
+            metrics.recordStage(SubmissionMetrics.Stage.ENCODE, System.nanoTime() - start);
+            metrics.recordBytesSent(counting.count);
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
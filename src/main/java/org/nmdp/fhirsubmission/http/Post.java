@@ -25,105 +25,404 @@ package org.nmdp.fhirsubmission.http;
  */
 
 import com.google.gson.*;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.entity.GzipCompressingEntity;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.log4j.Logger;
+import org.nmdp.fhirsubmission.metrics.NoOpSubmissionMetrics;
+import org.nmdp.fhirsubmission.metrics.SubmissionMetrics;
+import org.nmdp.fhirsubmission.object.FhirSubmissionResponse;
+import org.nmdp.fhirsubmission.object.TransactionResponse;
+import org.nmdp.fhirsubmission.serialization.SerializerRegistry;
+import org.nmdp.fhirsubmission.util.WorkerThreads;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.io.UnsupportedEncodingException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
-public class Post {
+public class Post implements Closeable {
 
     private static final Logger LOG = Logger.getLogger(Post.class);
     private static final String HEADER_KEY = "Content-Type";
     private static final String HEADER_VALUE = "application/json";
-    private static final String DOUBLE_QUOTE = "\"";
-    private static final String BACKSLASH = "\\\\";
-    private static final String OPENING_BRACKET = "\\{";
+    private static final String IF_NONE_EXIST_HEADER = "If-None-Exist";
     private static final String RESOURCE_KEY = "resource";
-    private static final Gson GSON = new GsonBuilder().create();
+    private static final String ENTRY_KEY = "entry";
+    private static final String FULL_URL_KEY = "fullUrl";
+    private static final String REFERENCE_KEY = "reference";
+    private static final String HISTORY_SEGMENT = "/_history";
+    private static final char PATH_SEPARATOR = '/';
+    private static final char QUERY_SEPARATOR = '?';
+    private static final SerializerRegistry SERIALIZERS = SerializerRegistry.getInstance();
+    private static final String THREAD_NAME_PREFIX = "fhir-post-";
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
 
-    private final HttpClient CLIENT;
+    public static final int DEFAULT_MAX_IN_FLIGHT = 8;
+
+    /**
+     * Hands the response back as-is. The client consumes the entity and releases the connection
+     * to the pool once the handler returns; the status line and headers stay readable.
+     */
+    private static final ResponseHandler<HttpResponse> RESPONSE_HANDLER = response -> response;
+
+    private final RetryingClient CLIENT;
+    private final ExecutorService executor;
+    private final Set<String> compressedEndpoints;
 
     public Post() {
-        this.CLIENT = HttpClientBuilder.create().build();
+        this(HttpClientPool.getDefault());
+    }
+
+    public Post(HttpClientPool pool) {
+        this(pool, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * @param maxInFlight upper bound on bundles sent concurrently by {@link #asyncPostBatch(String, JsonArray)}
+     */
+    public Post(HttpClientPool pool, int maxInFlight) {
+        this(pool, maxInFlight, Collections.emptySet());
+    }
+
+    /**
+     * @param compressedEndpoints resource types, such as {@code Bundle} or {@code Sequence}, whose
+     *                            requests are sent with {@code Content-Encoding: gzip}
+     */
+    public Post(HttpClientPool pool, int maxInFlight, Set<String> compressedEndpoints) {
+        this(pool, maxInFlight, compressedEndpoints, new RetryPolicy(), pool.getCircuitBreaker());
+    }
+
+    /**
+     * Every request, single resources and transactions alike, is retried under
+     * {@code retryPolicy}; {@code breaker} is shared by all of them.
+     */
+    public Post(HttpClientPool pool, int maxInFlight, Set<String> compressedEndpoints, RetryPolicy retryPolicy,
+                CircuitBreaker breaker) {
+        this(pool, maxInFlight, compressedEndpoints, retryPolicy, breaker, new NoOpSubmissionMetrics());
+    }
+
+    /**
+     * Reports to {@code metrics} the time every request spends being encoded, waiting for the
+     * server and being read, the bytes sent, the entries of every transaction bundle, the bundles
+     * queued for and held by the sender threads, and every outcome and retry.
+     */
+    public Post(HttpClientPool pool, int maxInFlight, Set<String> compressedEndpoints, RetryPolicy retryPolicy,
+                CircuitBreaker breaker, SubmissionMetrics metrics) {
+        this.CLIENT = new RetryingClient(pool.getClient(), retryPolicy, breaker, metrics);
+        this.compressedEndpoints = new HashSet<>(compressedEndpoints);
+        this.executor = WorkerThreads.fixed(THREAD_NAME_PREFIX, maxInFlight);
     }
 
     public <T> HttpResponse syncPost(T data, String url, JsonSerializer serializer, Class<T> clazz) {
-        return sendPost(data, url, serializer, clazz, this.CLIENT);
+        return syncPost(data, url, serializer, clazz, null);
+    }
+
+    /**
+     * Conditional create: with an {@code ifNoneExist} search, such as
+     * {@code identifier=system|value}, the server answers {@code 200 OK} with the matching
+     * resource instead of writing a second one. A {@code null} search posts unconditionally.
+     */
+    public <T> HttpResponse syncPost(T data, String url, JsonSerializer serializer, Class<T> clazz, String ifNoneExist) {
+        return sendPost(data, url, serializer, clazz, this.CLIENT, isCompressed(url), ifNoneExist);
+    }
+
+    /**
+     * Sends every bundle in {@code batch} as {@link #asyncPostBatch(String, JsonArray)} does and
+     * waits for all of them. The response at index {@code i} answers bundle {@code i}; a bundle
+     * that could not be sent is logged and its response is {@code null}.
+     */
+    public List<HttpResponse> syncPostBatch(String url, JsonArray batch) {
+        List<HttpResponse> responses = new ArrayList<>();
+
+        for (CompletableFuture<HttpResponse> response : asyncPostBatch(url, batch)) {
+            try {
+                responses.add(response.join());
+            } catch (CompletionException ex) {
+                LOG.error(ex.getCause());
+                responses.add(null);
+            }
+        }
+
+        return responses;
+    }
+
+    /**
+     * Sends every bundle in {@code batch}, keeping at most {@code maxInFlight} requests open at
+     * once. The future at index {@code i} completes with the response to bundle {@code i}, or
+     * exceptionally if that bundle could not be sent.
+     */
+    public List<CompletableFuture<HttpResponse>> asyncPostBatch(String url, JsonArray batch) {
+        List<CompletableFuture<HttpResponse>> responses = new ArrayList<>();
+        boolean gzip = isCompressed(url);
+
+        for (JsonElement bundle : batch) {
+            responses.add(schedule(() -> sendPost(new JsonEntity(bundle), url, CLIENT, gzip)));
+        }
+
+        return responses;
+    }
+
+    /**
+     * Sends the chunks of one patient's transaction one after the other on the batch executor.
+     * Each chunk is posted only once the previous one has been acknowledged, with its
+     * {@code urn:uuid} references to resources created by earlier chunks rewritten to the ids
+     * the server assigned; entries already created by an earlier chunk are left out. The future
+     * completes exceptionally with the first chunk that fails, and later chunks are not sent.
+     */
+    public CompletableFuture<TransactionResponse> asyncPostTransaction(String url, List<JsonObject> chunks) {
+        return asyncPostTransaction(url, chunks, Collections.emptySet(), new TransactionResponse(), (chunk, results) -> { });
+    }
+
+    /**
+     * Like {@link #asyncPostTransaction(String, List)}, but picks up a transaction that was
+     * partly sent before: the chunks at {@code acknowledgedChunks} are skipped, and references to
+     * their entries are resolved from {@code acknowledged}, the results the server gave for them.
+     * {@code onChunk} is told the index and results of every chunk as soon as the server has
+     * acknowledged it.
+     */
+    public CompletableFuture<TransactionResponse> asyncPostTransaction(String url, List<JsonObject> chunks,
+                                                                      Set<Integer> acknowledgedChunks,
+                                                                      TransactionResponse acknowledged,
+                                                                      BiConsumer<Integer, TransactionResponse> onChunk) {
+        boolean gzip = isCompressed(url);
+
+        return schedule(() -> sendTransaction(url, chunks, acknowledgedChunks, acknowledged, onChunk, CLIENT, gzip));
+    }
+
+    public RetryMetrics getRetryMetrics() {
+        return CLIENT.getMetrics();
+    }
+
+    /**
+     * Stops accepting batches and waits for bundles already in flight to be answered.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException ex) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
     }
 
     public static <T> HttpResponse post(T data, String url, JsonSerializer serializer, Class<T> clazz) {
-        HttpClient client = HttpClientBuilder.create().build();
-        return sendPost(data, url, serializer, clazz, client);
+        return sendPost(data, url, serializer, clazz, defaultClient(), false, null);
     }
 
+    /**
+     * Sends the bundles concurrently on a shared default {@code Post}, at most
+     * {@link #DEFAULT_MAX_IN_FLIGHT} at a time, with the results of
+     * {@link #syncPostBatch(String, JsonArray)}.
+     */
     public static List<HttpResponse> postBatch(String url, JsonArray batch) {
-        return sendBatchPost(url, batch);
+        return DefaultPostHolder.INSTANCE.syncPostBatch(url, batch);
     }
 
-    private static List<HttpResponse> sendBatchPost(String url, JsonArray bundles) {
-        HttpClient client = HttpClientBuilder.create().build();
-        List<HttpResponse> responses = new ArrayList<>();
+    /**
+     * The static entry points retry under the default policy and share the default pool's breaker.
+     */
+    private static RetryingClient defaultClient() {
+        return DefaultClientHolder.INSTANCE;
+    }
+
+    /**
+     * Runs {@code request} on the batch executor, counted as queued until a sender thread takes
+     * it up and as in flight until it is done.
+     */
+    private <R> CompletableFuture<R> schedule(Request<R> request) {
+        SubmissionMetrics metrics = CLIENT.getSubmissionMetrics();
+
+        metrics.addQueued(1);
 
         try {
-            Iterator iterator = bundles.iterator();
-
-            while (iterator.hasNext()) {
-                JsonObject json = (JsonObject) iterator.next();
-                String jsonString = GSON.toJson(json);
-                String jsonFormattedString = jsonString
-                        .replaceAll(String.format("%s%s%s%s", DOUBLE_QUOTE, OPENING_BRACKET, BACKSLASH, DOUBLE_QUOTE),
-                                String.format("%s%s", OPENING_BRACKET, DOUBLE_QUOTE));
-                jsonFormattedString = jsonFormattedString
-                        .replaceAll(String.format("}%s", DOUBLE_QUOTE), "}");
-                jsonFormattedString = jsonFormattedString
-                        .replaceAll(String.format("%s%s", BACKSLASH, DOUBLE_QUOTE), DOUBLE_QUOTE);
-
-                responses.add(sendPost(jsonFormattedString, url, client));
-            }
-        } catch (UnsupportedEncodingException ex) {
-            LOG.error(ex);
-        } catch (IOException ex) {
-            LOG.error(ex);
-        } catch (Exception ex) {
-            LOG.error(ex);
+            return CompletableFuture.supplyAsync(() -> {
+                metrics.addQueued(-1);
+                metrics.addInFlight(1);
+
+                try {
+                    return request.send();
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                } finally {
+                    metrics.addInFlight(-1);
+                }
+            }, executor);
+        } catch (RejectedExecutionException ex) {
+            metrics.addQueued(-1);
             throw ex;
-        } finally {
-            return responses;
         }
     }
 
-    private static HttpResponse sendPost(String data, String url, HttpClient client) throws UnsupportedEncodingException, IOException {
-        HttpPost post = new HttpPost(url);
-        StringEntity entity = new StringEntity(data);
-        post.setEntity(entity);
-        post.setHeader(HEADER_KEY, HEADER_VALUE);
+    /**
+     * Whether requests to {@code url} are compressed, judged by the resource type in its last
+     * path segment.
+     */
+    private boolean isCompressed(String url) {
+        int query = url.indexOf(QUERY_SEPARATOR);
+        String path = query < 0 ? url : url.substring(0, query);
+        String endpoint = path.substring(path.lastIndexOf(PATH_SEPARATOR) + 1);
 
-        return client.execute(post);
+        return compressedEndpoints.contains(endpoint);
     }
 
-    private static <T> HttpResponse sendPost(T data, String url, JsonSerializer serializer, Class<T> clazz, HttpClient client) {
-        HttpPost post = new HttpPost(url);
-        HttpResponse response = null;
+    private static TransactionResponse sendTransaction(String url, List<JsonObject> chunks, Set<Integer> acknowledgedChunks,
+                                                       TransactionResponse acknowledged,
+                                                       BiConsumer<Integer, TransactionResponse> onChunk,
+                                                       RetryingClient client, boolean gzip) throws IOException {
+        TransactionResponse transaction = new TransactionResponse();
+        TransactionResponseHandler handler = new TransactionResponseHandler(client.getSubmissionMetrics());
+        Map<String, String> references = new HashMap<>();
 
-        try {
-            String json;
+        acknowledged.getResults().forEach((fullUrl, result) -> {
+            transaction.addResult(fullUrl, result);
+            references.put(fullUrl, toReference(result.getUrl()));
+        });
 
-            if (serializer == null) {
-                json = GSON.toJson(data);
+        for (int i = 0; i < chunks.size(); i++) {
+            if (acknowledgedChunks.contains(i)) {
+                continue;
+            }
+
+            JsonObject chunk = resolveReferences(chunks.get(i), references);
+            JsonArray entries = chunk.getAsJsonArray(ENTRY_KEY);
+            TransactionResponse chunkResults = new TransactionResponse();
+            List<FhirSubmissionResponse> results;
+
+            client.getSubmissionMetrics().recordBundleEntries(entries.size());
+
+            try {
+                results = sendPost(new JsonEntity(chunk), url, client, handler, gzip, null);
+            } catch (IOException ex) {
+                throw new IOException(String.format("Chunk %d of %d failed", i + 1, chunks.size()), ex);
+            }
+
+            for (int j = 0; j < entries.size() && j < results.size(); j++) {
+                JsonElement fullUrl = entries.get(j).getAsJsonObject().get(FULL_URL_KEY);
+                FhirSubmissionResponse result = results.get(j);
+
+                if (fullUrl != null && result != null && result.getUrl() != null) {
+                    chunkResults.addResult(fullUrl.getAsString(), result);
+                    transaction.addResult(fullUrl.getAsString(), result);
+                    references.put(fullUrl.getAsString(), toReference(result.getUrl()));
+                }
+            }
+
+            onChunk.accept(i, chunkResults);
+        }
+
+        return transaction;
+    }
+
+    /**
+     * Drops entries the server has already created and points references at their server ids.
+     * The first chunk has nothing to resolve and is returned untouched.
+     */
+    private static JsonObject resolveReferences(JsonObject chunk, Map<String, String> references) {
+        if (references.isEmpty()) {
+            return chunk;
+        }
+
+        JsonArray entries = new JsonArray();
+
+        for (JsonElement element : chunk.getAsJsonArray(ENTRY_KEY)) {
+            JsonElement fullUrl = element.getAsJsonObject().get(FULL_URL_KEY);
+
+            if (fullUrl == null || !references.containsKey(fullUrl.getAsString())) {
+                rewriteReferences(element.getAsJsonObject().get(RESOURCE_KEY), references);
+                entries.add(element);
+            }
+        }
+
+        chunk.add(ENTRY_KEY, entries);
+
+        return chunk;
+    }
+
+    private static void rewriteReferences(JsonElement element, Map<String, String> references) {
+        if (element == null || element.isJsonNull() || element.isJsonPrimitive()) {
+            return;
+        }
+
+        if (element.isJsonArray()) {
+            element.getAsJsonArray().forEach(child -> rewriteReferences(child, references));
+            return;
+        }
+
+        JsonObject json = element.getAsJsonObject();
+
+        for (Map.Entry<String, JsonElement> member : json.entrySet()) {
+            JsonElement value = member.getValue();
+
+            if (REFERENCE_KEY.equals(member.getKey()) && value.isJsonPrimitive()) {
+                String resolved = references.get(value.getAsString());
+
+                if (resolved != null) {
+                    member.setValue(new JsonPrimitive(resolved));
+                }
             } else {
-                GsonBuilder gsonBuilder = new GsonBuilder();
-                gsonBuilder.registerTypeAdapter(clazz, serializer);
-                Gson gson = gsonBuilder.create();
-                json = gson.toJson(data);
+                rewriteReferences(value, references);
+            }
+        }
+    }
+
+    /**
+     * Turns an entry location such as {@code Patient/123/_history/1} into the reference
+     * {@code Patient/123}.
+     */
+    private static String toReference(String location) {
+        int history = location.indexOf(HISTORY_SEGMENT);
+
+        return history < 0 ? location : location.substring(0, history);
+    }
+
+    private static HttpResponse sendPost(HttpEntity entity, String url, RetryingClient client, boolean gzip) throws IOException {
+        return sendPost(entity, url, client, RESPONSE_HANDLER, gzip, null);
+    }
+
+    /**
+     * With {@code gzip} the entity is compressed as it is written to the connection; no
+     * compressed copy of the body is ever held in memory. Compressed responses are decoded by
+     * the client, which advertises {@code Accept-Encoding: gzip,deflate} on every request. A
+     * non-null {@code ifNoneExist} is sent as the {@code If-None-Exist} header.
+     */
+    private static <R> R sendPost(HttpEntity entity, String url, RetryingClient client, ResponseHandler<R> handler,
+                                  boolean gzip, String ifNoneExist) throws IOException {
+        return client.execute(() -> {
+            HttpPost post = new HttpPost(url);
+            post.setEntity(new MeteredEntity(gzip ? new GzipCompressingEntity(entity) : entity, client.getSubmissionMetrics()));
+            post.setHeader(HEADER_KEY, HEADER_VALUE);
+
+            if (ifNoneExist != null) {
+                post.setHeader(IF_NONE_EXIST_HEADER, ifNoneExist);
             }
 
-            return sendPost(json, url, client);
+            return post;
+        }, handler);
+    }
+
+    private static <T> HttpResponse sendPost(T data, String url, JsonSerializer serializer, Class<T> clazz, RetryingClient client,
+                                             boolean gzip, String ifNoneExist) {
+        HttpResponse response = null;
+
+        try {
+            Gson converter = SERIALIZERS.getStreamingConverter(clazz, serializer);
+
+            response = sendPost(new JsonEntity(data, clazz, converter), url, client, RESPONSE_HANDLER, gzip, ifNoneExist);
         } catch (UnsupportedEncodingException ex) {
             LOG.error(ex);
         } catch (IOException ex) {
@@ -132,4 +431,21 @@ public class Post {
             return response;
         }
     }
+
+    private static class DefaultClientHolder {
+        private static final RetryingClient INSTANCE = new RetryingClient(HttpClientPool.getDefault().getClient(),
+                new RetryPolicy(), HttpClientPool.getDefault().getCircuitBreaker());
+    }
+
+    /**
+     * The sender threads time out when idle, so the shared instance is never closed.
+     */
+    private static class DefaultPostHolder {
+        private static final Post INSTANCE = new Post();
+    }
+
+    @FunctionalInterface
+    private interface Request<R> {
+        R send() throws IOException;
+    }
 }
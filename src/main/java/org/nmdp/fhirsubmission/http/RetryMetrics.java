@@ -0,0 +1,103 @@
+package org.nmdp.fhirsubmission.http;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running totals of what the retry layer of one {@link Post} did, and the state of its circuit
+ * breaker.
+ */
+public class RetryMetrics {
+
+    private final CircuitBreaker breaker;
+    private final LongAdder attempts = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder retryAfterWaits = new LongAdder();
+    private final LongAdder exhausted = new LongAdder();
+    private final LongAdder breakerRejections = new LongAdder();
+
+    public RetryMetrics(CircuitBreaker breaker) {
+        this.breaker = breaker;
+    }
+
+    /**
+     * Requests put on the wire, retries included.
+     */
+    public long getAttempts() {
+        return attempts.sum();
+    }
+
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    /**
+     * Retries whose wait was set by the server's {@code Retry-After}.
+     */
+    public long getRetryAfterWaits() {
+        return retryAfterWaits.sum();
+    }
+
+    /**
+     * Requests that failed after their last attempt.
+     */
+    public long getExhausted() {
+        return exhausted.sum();
+    }
+
+    /**
+     * Attempts held back because the breaker was open.
+     */
+    public long getBreakerRejections() {
+        return breakerRejections.sum();
+    }
+
+    public long getBreakerOpenings() {
+        return breaker.getTimesOpened();
+    }
+
+    public CircuitBreaker.State getBreakerState() {
+        return breaker.getState();
+    }
+
+    void recordAttempt() {
+        attempts.increment();
+    }
+
+    void recordRetry(boolean retryAfter) {
+        retries.increment();
+
+        if (retryAfter) {
+            retryAfterWaits.increment();
+        }
+    }
+
+    void recordExhausted() {
+        exhausted.increment();
+    }
+
+    void recordBreakerRejection() {
+        breakerRejections.increment();
+    }
+}
@@ -0,0 +1,155 @@
+package org.nmdp.fhirsubmission.http;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * When and how long {@link Post} waits before sending a request again. Throttling and gateway
+ * statuses, and failures to get the request onto a connection at all, are retried; the wait is
+ * capped exponential backoff with full jitter, or the server's {@code Retry-After} when it sent
+ * one.
+ */
+public class RetryPolicy {
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+    public static final long DEFAULT_BASE_DELAY_MILLIS = 100;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 10000;
+    public static final long DEFAULT_MAX_RETRY_AFTER_MILLIS = 60000;
+
+    private static final int MAX_SHIFT = 30;
+
+    private int maxAttempts;
+    private long baseDelayMillis;
+    private long maxDelayMillis;
+    private long maxRetryAfterMillis;
+    private Set<Integer> retryableStatuses;
+
+    public RetryPolicy() {
+        this.maxAttempts = DEFAULT_MAX_ATTEMPTS;
+        this.baseDelayMillis = DEFAULT_BASE_DELAY_MILLIS;
+        this.maxDelayMillis = DEFAULT_MAX_DELAY_MILLIS;
+        this.maxRetryAfterMillis = DEFAULT_MAX_RETRY_AFTER_MILLIS;
+        this.retryableStatuses = new HashSet<>(Arrays.asList(429, 502, 503, 504));
+    }
+
+    /**
+     * A policy that sends every request once.
+     */
+    public static RetryPolicy none() {
+        RetryPolicy policy = new RetryPolicy();
+        policy.setMaxAttempts(1);
+
+        return policy;
+    }
+
+    /**
+     * Attempts per request, the first one included.
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    public long getBaseDelayMillis() {
+        return baseDelayMillis;
+    }
+
+    public void setBaseDelayMillis(long baseDelayMillis) {
+        this.baseDelayMillis = baseDelayMillis;
+    }
+
+    /**
+     * Cap on the backoff before jitter; it does not limit {@code Retry-After}.
+     */
+    public long getMaxDelayMillis() {
+        return maxDelayMillis;
+    }
+
+    public void setMaxDelayMillis(long maxDelayMillis) {
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    /**
+     * Longest {@code Retry-After} that is honored as sent; longer ones are cut to this.
+     */
+    public long getMaxRetryAfterMillis() {
+        return maxRetryAfterMillis;
+    }
+
+    public void setMaxRetryAfterMillis(long maxRetryAfterMillis) {
+        this.maxRetryAfterMillis = maxRetryAfterMillis;
+    }
+
+    public Set<Integer> getRetryableStatuses() {
+        return retryableStatuses;
+    }
+
+    public void setRetryableStatuses(Set<Integer> retryableStatuses) {
+        this.retryableStatuses = retryableStatuses;
+    }
+
+    public boolean isRetryable(int status) {
+        return retryableStatuses.contains(status);
+    }
+
+    /**
+     * Only failures that happened before the request was sent are retryable: refused or timed
+     * out connections and no free connection in the pool. Once the request has gone out, a reset,
+     * a read timeout or an unreadable response leaves it unknown whether the server committed it,
+     * and sending a non-idempotent POST again could create every resource twice.
+     */
+    public boolean isRetryable(IOException ex) {
+        return ex instanceof ConnectException || ex instanceof ConnectTimeoutException
+                || ex instanceof ConnectionPoolTimeoutException;
+    }
+
+    /**
+     * Wait before retry number {@code retry}, counting from one. A {@code retryAfterMillis} of
+     * zero or more is honored, with up to one base delay of jitter added so that clients told
+     * the same time do not all return at once; otherwise the wait is drawn uniformly from zero
+     * to {@code min(maxDelay, baseDelay * 2^(retry - 1))}.
+     */
+    public long delayMillis(int retry, long retryAfterMillis) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        if (retryAfterMillis >= 0) {
+            return Math.min(retryAfterMillis, maxRetryAfterMillis) + random.nextLong(baseDelayMillis + 1);
+        }
+
+        long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(retry - 1, MAX_SHIFT));
+
+        return random.nextLong(ceiling + 1);
+    }
+}
@@ -0,0 +1,253 @@
+package org.nmdp.fhirsubmission.http;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.util.EntityUtils;
+import org.nmdp.fhirsubmission.exceptions.CircuitBreakerOpenException;
+import org.nmdp.fhirsubmission.metrics.NoOpSubmissionMetrics;
+import org.nmdp.fhirsubmission.metrics.SubmissionMetrics;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Sends requests through an {@link HttpClient} under a {@link RetryPolicy} and a
+ * {@link CircuitBreaker}. A response with a retryable status is consumed and the request sent
+ * again; any other response goes to the caller's handler. When the attempts run out the last
+ * failure is thrown, a retryable status as an {@link HttpResponseException}.
+ */
+class RetryingClient {
+
+    private static final String RETRY_AFTER_HEADER = "Retry-After";
+    private static final long NO_RETRY_AFTER = -1;
+    private static final int NO_STATUS = 0;
+    private static final int SERVER_ERROR = 500;
+    private static final char PATH_SEPARATOR = '/';
+
+    private final HttpClient client;
+    private final RetryPolicy policy;
+    private final CircuitBreaker breaker;
+    private final RetryMetrics metrics;
+    private final SubmissionMetrics submissionMetrics;
+
+    RetryingClient(HttpClient client, RetryPolicy policy, CircuitBreaker breaker) {
+        this(client, policy, breaker, new NoOpSubmissionMetrics());
+    }
+
+    /**
+     * Every attempt is reported to {@code submissionMetrics}: its HTTP and parse times, and its
+     * outcome or retry by the resource type it was posted to and the status it got.
+     */
+    RetryingClient(HttpClient client, RetryPolicy policy, CircuitBreaker breaker, SubmissionMetrics submissionMetrics) {
+        this.client = client;
+        this.policy = policy;
+        this.breaker = breaker;
+        this.metrics = new RetryMetrics(breaker);
+        this.submissionMetrics = submissionMetrics;
+    }
+
+    RetryMetrics getMetrics() {
+        return metrics;
+    }
+
+    SubmissionMetrics getSubmissionMetrics() {
+        return submissionMetrics;
+    }
+
+    /**
+     * @param requests builds the request afresh for every attempt
+     */
+    <R> R execute(Supplier<HttpUriRequest> requests, ResponseHandler<R> handler) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            HttpUriRequest request = requests.get();
+            String resourceType = resourceType(request);
+            long wait = breaker.acquire();
+
+            if (wait > 0) {
+                metrics.recordBreakerRejection();
+
+                if (attempt >= policy.getMaxAttempts()) {
+                    metrics.recordExhausted();
+                    submissionMetrics.recordFailure(resourceType, NO_STATUS);
+                    throw new CircuitBreakerOpenException(String.format("Circuit breaker open after %d attempts", attempt));
+                }
+
+                sleep(Math.max(wait, policy.delayMillis(attempt, NO_RETRY_AFTER)));
+                continue;
+            }
+
+            IOException failure;
+            long retryAfter = NO_RETRY_AFTER;
+            long start = System.nanoTime();
+            int[] status = { NO_STATUS };
+
+            metrics.recordAttempt();
+
+            try {
+                R result = client.execute(request, response -> screen(response, handler, resourceType, start, status));
+                reportToBreaker(status[0]);
+
+                return result;
+            } catch (RetryableStatusException ex) {
+                breaker.onFailure();
+                failure = ex;
+                retryAfter = ex.retryAfterMillis;
+            } catch (HttpResponseException ex) {
+                reportToBreaker(ex.getStatusCode());
+                submissionMetrics.recordFailure(resourceType, ex.getStatusCode());
+                throw ex;
+            } catch (IOException ex) {
+                breaker.onFailure();
+
+                if (!policy.isRetryable(ex)) {
+                    submissionMetrics.recordFailure(resourceType, status[0]);
+                    throw ex;
+                }
+
+                failure = ex;
+            } catch (RuntimeException ex) {
+                reportToBreaker(status[0]);
+                submissionMetrics.recordFailure(resourceType, status[0]);
+                throw ex;
+            }
+
+            if (attempt >= policy.getMaxAttempts()) {
+                metrics.recordExhausted();
+                submissionMetrics.recordFailure(resourceType, status[0]);
+                throw failure;
+            }
+
+            metrics.recordRetry(retryAfter >= 0);
+            submissionMetrics.recordRetry(resourceType, status[0]);
+            sleep(policy.delayMillis(attempt, retryAfter));
+        }
+    }
+
+    /**
+     * Tells the breaker what an attempt that got {@code status} says about the server: a
+     * {@code 5xx} is a failure and any other status a success, since the server answered a
+     * request it did not like. An attempt that ended on the client before any response,
+     * {@link #NO_STATUS}, says nothing either way.
+     */
+    private void reportToBreaker(int status) {
+        if (status == NO_STATUS) {
+            breaker.onAbandoned();
+        } else if (status >= SERVER_ERROR) {
+            breaker.onFailure();
+        } else {
+            breaker.onSuccess();
+        }
+    }
+
+    /**
+     * Passes a response with a final status to the handler, recording how long it took to arrive
+     * and to be read, and counting it when the handler returns; failures the handler raises are
+     * counted by {@link #execute(Supplier, ResponseHandler)}.
+     */
+    private <R> R screen(HttpResponse response, ResponseHandler<R> handler, String resourceType, long start,
+                         int[] status) throws IOException {
+        status[0] = response.getStatusLine().getStatusCode();
+        submissionMetrics.recordStage(SubmissionMetrics.Stage.HTTP, System.nanoTime() - start);
+
+        if (policy.isRetryable(status[0])) {
+            EntityUtils.consume(response.getEntity());
+            throw new RetryableStatusException(status[0], response.getStatusLine().getReasonPhrase(), retryAfterMillis(response));
+        }
+
+        long parseStart = System.nanoTime();
+        R result;
+
+        try {
+            result = handler.handleResponse(response);
+        } finally {
+            submissionMetrics.recordStage(SubmissionMetrics.Stage.PARSE, System.nanoTime() - parseStart);
+        }
+
+        if (status[0] >= 200 && status[0] < 300) {
+            submissionMetrics.recordSuccess(resourceType, status[0]);
+        } else {
+            submissionMetrics.recordFailure(resourceType, status[0]);
+        }
+
+        return result;
+    }
+
+    /**
+     * {@code Retry-After} as delta-seconds or an HTTP date, in milliseconds from now;
+     * {@link #NO_RETRY_AFTER} if it is absent or unreadable.
+     */
+    private static long retryAfterMillis(HttpResponse response) {
+        Header header = response.getFirstHeader(RETRY_AFTER_HEADER);
+
+        if (header == null) {
+            return NO_RETRY_AFTER;
+        }
+
+        String value = header.getValue().trim();
+
+        try {
+            return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(value)));
+        } catch (NumberFormatException ex) {
+            Date date = DateUtils.parseDate(value);
+
+            return date == null ? NO_RETRY_AFTER : Math.max(0, date.getTime() - System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * The last segment of the request's path, such as {@code Bundle} or {@code Patient}.
+     */
+    private static String resourceType(HttpUriRequest request) {
+        String path = request.getURI().getPath();
+
+        return path.substring(path.lastIndexOf(PATH_SEPARATOR) + 1);
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry");
+        }
+    }
+
+    private static class RetryableStatusException extends HttpResponseException {
+        private final long retryAfterMillis;
+
+        private RetryableStatusException(int status, String reason, long retryAfterMillis) {
+            super(status, reason);
+            this.retryAfterMillis = retryAfterMillis;
+        }
+    }
+}
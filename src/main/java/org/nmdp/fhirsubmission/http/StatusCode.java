@@ -25,5 +25,6 @@ package org.nmdp.fhirsubmission.http;
  */
 
 public class StatusCode {
+    public static final int OK = 200;
     public static final int CREATED = 201;
 }
@@ -0,0 +1,179 @@
+package org.nmdp.fhirsubmission.http;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import com.google.gson.stream.JsonReader;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.StatusLine;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.util.EntityUtils;
+import org.nmdp.fhirsubmission.metrics.NoOpSubmissionMetrics;
+import org.nmdp.fhirsubmission.metrics.SubmissionMetrics;
+import org.nmdp.fhirsubmission.object.FhirSubmissionResponse;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the {@code response.location} and {@code response.status} of every entry of a
+ * transaction-response Bundle, in entry order, straight off the connection. Entries without a
+ * response yield {@code null}; an entry is marked created unless its status is {@code 200},
+ * which is how the server reports a conditional create that matched. Any non-2xx status of the
+ * transaction itself is raised as an {@link HttpResponseException}. Every entry's status is
+ * counted in the metrics under the resource type of its location.
+ */
+public class TransactionResponseHandler implements ResponseHandler<List<FhirSubmissionResponse>> {
+
+    private static final String ENTRY_KEY = "entry";
+    private static final String RESPONSE_KEY = "response";
+    private static final String LOCATION_KEY = "location";
+    private static final String STATUS_KEY = "status";
+    private static final String MATCHED_STATUS = String.valueOf(StatusCode.OK);
+    private static final String HISTORY_SEGMENT = "/_history";
+    private static final char PATH_SEPARATOR = '/';
+    private static final char STATUS_SEPARATOR = ' ';
+
+    private final SubmissionMetrics metrics;
+
+    public TransactionResponseHandler() {
+        this(new NoOpSubmissionMetrics());
+    }
+
+    public TransactionResponseHandler(SubmissionMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public List<FhirSubmissionResponse> handleResponse(HttpResponse response) throws IOException {
+        StatusLine status = response.getStatusLine();
+        HttpEntity entity = response.getEntity();
+        List<FhirSubmissionResponse> results = new ArrayList<>();
+
+        if (status.getStatusCode() < 200 || status.getStatusCode() >= 300) {
+            EntityUtils.consume(entity);
+            throw new HttpResponseException(status.getStatusCode(), status.getReasonPhrase());
+        }
+
+        if (entity == null) {
+            return results;
+        }
+
+        try (JsonReader reader = new JsonReader(new InputStreamReader(entity.getContent(), StandardCharsets.UTF_8))) {
+            reader.beginObject();
+
+            while (reader.hasNext()) {
+                if (ENTRY_KEY.equals(reader.nextName())) {
+                    readEntries(reader, results);
+                } else {
+                    reader.skipValue();
+                }
+            }
+
+            reader.endObject();
+        }
+
+        return results;
+    }
+
+    private void readEntries(JsonReader reader, List<FhirSubmissionResponse> results) throws IOException {
+        reader.beginArray();
+
+        while (reader.hasNext()) {
+            FhirSubmissionResponse result = null;
+
+            reader.beginObject();
+
+            while (reader.hasNext()) {
+                if (RESPONSE_KEY.equals(reader.nextName())) {
+                    result = readResult(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+
+            reader.endObject();
+            results.add(result);
+        }
+
+        reader.endArray();
+    }
+
+    private FhirSubmissionResponse readResult(JsonReader reader) throws IOException {
+        FhirSubmissionResponse result = new FhirSubmissionResponse();
+        String status = null;
+
+        result.setCreated(true);
+        reader.beginObject();
+
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+
+            if (LOCATION_KEY.equals(name)) {
+                result.setUrl(reader.nextString());
+            } else if (STATUS_KEY.equals(name)) {
+                status = reader.nextString();
+                result.setCreated(!status.startsWith(MATCHED_STATUS));
+            } else {
+                reader.skipValue();
+            }
+        }
+
+        reader.endObject();
+
+        if (result.getUrl() != null && status != null) {
+            metrics.recordSuccess(resourceType(result.getUrl()), statusCode(status));
+        }
+
+        return result;
+    }
+
+    /**
+     * The type of a location such as {@code Patient/123/_history/1}, with or without the
+     * server's base in front.
+     */
+    private static String resourceType(String location) {
+        int history = location.indexOf(HISTORY_SEGMENT);
+        String path = history < 0 ? location : location.substring(0, history);
+        int id = path.lastIndexOf(PATH_SEPARATOR);
+
+        return id < 0 ? path : path.substring(path.lastIndexOf(PATH_SEPARATOR, id - 1) + 1, id);
+    }
+
+    /**
+     * The code of an entry status such as {@code 201 Created}; 0 if there is none.
+     */
+    private static int statusCode(String status) {
+        int end = status.indexOf(STATUS_SEPARATOR);
+
+        try {
+            return Integer.parseInt(end < 0 ? status : status.substring(0, end));
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+}
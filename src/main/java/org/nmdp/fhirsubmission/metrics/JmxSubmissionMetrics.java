@@ -0,0 +1,217 @@
+package org.nmdp.fhirsubmission.metrics;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import org.apache.log4j.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the metrics in memory and publishes them on the platform MBean server as
+ * {@code org.nmdp.fhirsubmission:type=SubmissionMetrics,name=<name>}, where any JMX console can
+ * read them. Recording is lock-free. Call {@link #register()} to publish and {@link #close()} to
+ * withdraw.
+ */
+public class JmxSubmissionMetrics implements SubmissionMetrics, SubmissionMetricsMXBean, Closeable {
+
+    private static final String DOMAIN = "org.nmdp.fhirsubmission";
+    private static final String TYPE = "SubmissionMetrics";
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+    private static final double ENTRIES = 1;
+    private static final String KEY_SEPARATOR = " ";
+
+    private static final Logger LOG = Logger.getLogger(JmxSubmissionMetrics.class);
+
+    private final ObjectName objectName;
+    private final Map<Stage, Histogram> stages = new EnumMap<>(Stage.class);
+    private final Histogram bundleEntries = new Histogram();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder inFlight = new LongAdder();
+    private final LongAdder queued = new LongAdder();
+    private final Map<String, LongAdder> successes = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> failures = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> retries = new ConcurrentHashMap<>();
+
+    public JmxSubmissionMetrics(String name) throws MalformedObjectNameException {
+        this.objectName = new ObjectName(DOMAIN, createProperties(name));
+
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, new Histogram());
+        }
+    }
+
+    public void register() throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+    }
+
+    public ObjectName getObjectName() {
+        return objectName;
+    }
+
+    @Override
+    public void close() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        if (!server.isRegistered(objectName)) {
+            return;
+        }
+
+        try {
+            server.unregisterMBean(objectName);
+        } catch (JMException ex) {
+            LOG.error(ex);
+        }
+    }
+
+    @Override
+    public void recordStage(Stage stage, long nanos) {
+        stages.get(stage).record(nanos);
+    }
+
+    @Override
+    public void recordBytesSent(long bytes) {
+        bytesSent.add(bytes);
+    }
+
+    @Override
+    public void recordBundleEntries(int entries) {
+        bundleEntries.record(entries);
+    }
+
+    @Override
+    public void addInFlight(int delta) {
+        inFlight.add(delta);
+    }
+
+    @Override
+    public void addQueued(int delta) {
+        queued.add(delta);
+    }
+
+    @Override
+    public void recordSuccess(String resourceType, int status) {
+        increment(successes, resourceType, status);
+    }
+
+    @Override
+    public void recordFailure(String resourceType, int status) {
+        increment(failures, resourceType, status);
+    }
+
+    @Override
+    public void recordRetry(String resourceType, int status) {
+        increment(retries, resourceType, status);
+    }
+
+    @Override
+    public Map<String, HistogramSnapshot> getStageLatencies() {
+        Map<String, HistogramSnapshot> latencies = new LinkedHashMap<>();
+
+        stages.forEach((stage, histogram) -> latencies.put(stage.name(), histogram.snapshot(NANOS_PER_MILLI)));
+
+        return latencies;
+    }
+
+    @Override
+    public HistogramSnapshot getBundleEntries() {
+        return bundleEntries.snapshot(ENTRIES);
+    }
+
+    @Override
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    @Override
+    public long getInFlight() {
+        return inFlight.sum();
+    }
+
+    @Override
+    public long getQueued() {
+        return queued.sum();
+    }
+
+    @Override
+    public Map<String, Long> getSuccesses() {
+        return snapshot(successes);
+    }
+
+    @Override
+    public Map<String, Long> getFailures() {
+        return snapshot(failures);
+    }
+
+    @Override
+    public Map<String, Long> getRetries() {
+        return snapshot(retries);
+    }
+
+    /**
+     * Clears the stage and bundle-entry histograms, bytes sent and the success, failure and retry
+     * counters. The in-flight and queued gauges are not reset: they count requests that are still
+     * out, and zeroing them would send them negative as those complete.
+     */
+    @Override
+    public void reset() {
+        stages.values().forEach(Histogram::reset);
+        bundleEntries.reset();
+        bytesSent.reset();
+        successes.clear();
+        failures.clear();
+        retries.clear();
+    }
+
+    private static void increment(Map<String, LongAdder> counters, String resourceType, int status) {
+        counters.computeIfAbsent(resourceType + KEY_SEPARATOR + status, key -> new LongAdder()).increment();
+    }
+
+    private static Map<String, Long> snapshot(Map<String, LongAdder> counters) {
+        Map<String, Long> snapshot = new TreeMap<>();
+
+        counters.forEach((key, counter) -> snapshot.put(key, counter.sum()));
+
+        return snapshot;
+    }
+
+    private static Hashtable<String, String> createProperties(String name) {
+        Hashtable<String, String> properties = new Hashtable<>();
+
+        properties.put("type", TYPE);
+        properties.put("name", ObjectName.quote(name));
+
+        return properties;
+    }
+}
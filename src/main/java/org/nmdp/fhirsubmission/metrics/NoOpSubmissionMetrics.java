@@ -0,0 +1,68 @@
+package org.nmdp.fhirsubmission.metrics;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import java.util.function.Supplier;
+
+/**
+ * Discards everything; the default when no metrics are configured.
+ */
+public class NoOpSubmissionMetrics implements SubmissionMetrics {
+
+    @Override
+    public void recordStage(Stage stage, long nanos) {
+    }
+
+    @Override
+    public void recordBytesSent(long bytes) {
+    }
+
+    @Override
+    public void recordBundleEntries(int entries) {
+    }
+
+    @Override
+    public void addInFlight(int delta) {
+    }
+
+    @Override
+    public void addQueued(int delta) {
+    }
+
+    @Override
+    public void recordSuccess(String resourceType, int status) {
+    }
+
+    @Override
+    public void recordFailure(String resourceType, int status) {
+    }
+
+    @Override
+    public void recordRetry(String resourceType, int status) {
+    }
+
+    @Override
+    public <T> T time(Stage stage, Supplier<T> work) {
+        return work.get();
+    }
+}
@@ -0,0 +1,97 @@
+package org.nmdp.fhirsubmission.metrics;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import java.util.function.Supplier;
+
+/**
+ * Receives what a submission does, as {@link org.nmdp.fhirsubmission.util.ResourceBundler},
+ * {@link org.nmdp.fhirsubmission.http.Post} and
+ * {@link org.nmdp.fhirsubmission.util.FhirMessageUtil} do it. Implementations are called from the
+ * bundler, sender and response threads at once and must not block.
+ * <p>
+ * Results are counted by resource type and HTTP status. A request counts once under the type it
+ * was posted to, {@code Bundle} for transactions, and every entry of a transaction-response
+ * counts again under its own type, so {@code Patient 200} and {@code Patient 201} tell matched
+ * conditional creates from new ones. A request that got no response counts with status 0.
+ */
+public interface SubmissionMetrics {
+
+    enum Stage {
+        /** Serializing one patient's resources into JSON trees. */
+        SERIALIZE,
+        /** Assembling one patient's transaction bundle and cutting it into chunks. */
+        COMBINE,
+        /** Encoding a request body onto the connection, compression included. */
+        ENCODE,
+        /** From a request being handed to the client until its response arrives, encoding included. */
+        HTTP,
+        /** Reading a response. */
+        PARSE,
+        /** One patient of a pipelined submission, from being pulled until its result. */
+        SUBMIT
+    }
+
+    void recordStage(Stage stage, long nanos);
+
+    /**
+     * Request body bytes written to the connection, after compression, retries included.
+     */
+    void recordBytesSent(long bytes);
+
+    /**
+     * Entries of one transaction bundle as it is sent.
+     */
+    void recordBundleEntries(int entries);
+
+    /**
+     * Requests being sent, from a sender thread taking them up until they are answered or given
+     * up on.
+     */
+    void addInFlight(int delta);
+
+    /**
+     * Requests waiting for a sender thread.
+     */
+    void addQueued(int delta);
+
+    void recordSuccess(String resourceType, int status);
+
+    void recordFailure(String resourceType, int status);
+
+    void recordRetry(String resourceType, int status);
+
+    /**
+     * Runs {@code work} and records how long it took under {@code stage}, whether or not it
+     * completed normally.
+     */
+    default <T> T time(Stage stage, Supplier<T> work) {
+        long start = System.nanoTime();
+
+        try {
+            return work.get();
+        } finally {
+            recordStage(stage, System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package org.nmdp.fhirsubmission.metrics;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link JmxSubmissionMetrics}. Stage latencies are in milliseconds,
+ * counters are keyed by resource type and HTTP status, such as {@code Bundle 503}.
+ */
+public interface SubmissionMetricsMXBean {
+
+    Map<String, HistogramSnapshot> getStageLatencies();
+
+    HistogramSnapshot getBundleEntries();
+
+    long getBytesSent();
+
+    long getInFlight();
+
+    long getQueued();
+
+    Map<String, Long> getSuccesses();
+
+    Map<String, Long> getFailures();
+
+    Map<String, Long> getRetries();
+
+    /**
+     * Clears the histograms and counters; the in-flight and queued gauges are left alone.
+     */
+    void reset();
+}
@@ -24,83 +24,162 @@ package org.nmdp.fhirsubmission.object;
  * > http://www.opensource.org/licenses/lgpl-license.php
  */
 
+import com.google.gson.JsonObject;
+
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.List;
 
 public class BundleSubmission {
-    private String patient;
-    private Map<String, String> specimens;
-    private Map<String, String> diangosticReports;
-    private Map<String, List<String>> observations;
-    private Map<String, List<String>> sequences;
+    private String patientKey;
+    private String patientCondition;
+    private Map<String, String> specimenConditions;
+    private Map<String, String> specimenKeys;
+    private Map<String, List<String>> observationKeys;
+    private JsonObject patient;
+    private Map<String, JsonObject> specimens;
+    private Map<String, JsonObject> diangosticReports;
+    private Map<String, List<JsonObject>> observations;
+    private Map<String, List<JsonObject>> sequences;
 
     public BundleSubmission() {
         this.specimens = new HashMap<>();
+        this.specimenConditions = new HashMap<>();
+        this.specimenKeys = new HashMap<>();
+        this.observationKeys = new HashMap<>();
         this.diangosticReports = new HashMap<>();
         this.observations = new HashMap<>();
         this.sequences = new HashMap<>();
     }
 
-    public String getPatient() {
+    /**
+     * Stable name of the patient, {@code Patient/system*value}, from which name-based reference
+     * ids are derived.
+     */
+    public String getPatientKey() {
+        return patientKey;
+    }
+
+    public void setPatientKey(String patientKey) {
+        this.patientKey = patientKey;
+    }
+
+    /**
+     * {@code ifNoneExist} search that matches the patient on the server, or {@code null} to
+     * create it unconditionally.
+     */
+    public String getPatientCondition() {
+        return patientCondition;
+    }
+
+    public void setPatientCondition(String patientCondition) {
+        this.patientCondition = patientCondition;
+    }
+
+    /**
+     * {@code ifNoneExist} searches of the specimens, keyed like {@link #getSpecimens()}.
+     */
+    public Map<String, String> getSpecimenConditions() {
+        return specimenConditions;
+    }
+
+    public void setSpecimenConditions(Map<String, String> specimenConditions) {
+        this.specimenConditions = specimenConditions;
+    }
+
+    public void addSpecimenCondition(String key, String condition) {
+        this.specimenConditions.put(key, condition);
+    }
+
+    /**
+     * The {@code system*value} identifiers of the specimens, keyed like {@link #getSpecimens()}.
+     */
+    public Map<String, String> getSpecimenKeys() {
+        return specimenKeys;
+    }
+
+    public void setSpecimenKeys(Map<String, String> specimenKeys) {
+        this.specimenKeys = specimenKeys;
+    }
+
+    public void addSpecimenKey(String key, String specimenKey) {
+        this.specimenKeys.put(key, specimenKey);
+    }
+
+    /**
+     * The genotype of each observation, in the same order as {@link #getObservations()}.
+     */
+    public Map<String, List<String>> getObservationKeys() {
+        return observationKeys;
+    }
+
+    public void setObservationKeys(Map<String, List<String>> observationKeys) {
+        this.observationKeys = observationKeys;
+    }
+
+    public void addObservationKey(String key, String observationKey) {
+        this.observationKeys.computeIfAbsent(key, (v) -> new ArrayList<>()).add(observationKey);
+    }
+
+    public JsonObject getPatient() {
         return patient;
     }
 
-    public void setPatient(String patient) {
+    public void setPatient(JsonObject patient) {
         this.patient = patient;
     }
 
-    public Map<String, String> getSpecimens() {
+    public Map<String, JsonObject> getSpecimens() {
         return specimens;
     }
 
-    public void setSpecimens(Map<String, String> specimens) {
+    public void setSpecimens(Map<String, JsonObject> specimens) {
         this.specimens = specimens;
     }
 
-    public void addSpecimen(String key, String value) {
+    public void addSpecimen(String key, JsonObject value) {
         this.specimens.put(key, value);
     }
 
-    public Map<String, String> getDiangosticReports() {
+    public Map<String, JsonObject> getDiangosticReports() {
         return diangosticReports;
     }
 
-    public void setDiangosticReports(Map<String, String> diangosticReports) {
+    public void setDiangosticReports(Map<String, JsonObject> diangosticReports) {
         this.diangosticReports = diangosticReports;
     }
 
-    public void addDiagnosticReport(String key, String value) {
+    public void addDiagnosticReport(String key, JsonObject value) {
         this.diangosticReports.put(key, value);
     }
 
-    public Map<String, List<String>> getObservations() {
+    public Map<String, List<JsonObject>> getObservations() {
         return observations;
     }
 
-    public void setObservations(Map<String, List<String>> observations) {
+    public void setObservations(Map<String, List<JsonObject>> observations) {
         this.observations = observations;
     }
 
-    public void addObservation(String key, String value) {
+    public void addObservation(String key, JsonObject value) {
         this.observations.computeIfAbsent(key, (v) -> new ArrayList<>());
-        List<String> values = this.observations.get(key);
+        List<JsonObject> values = this.observations.get(key);
         values.add(value);
         this.observations.put(key, values);
     }
 
-    public Map<String, List<String>> getSequences() {
+    public Map<String, List<JsonObject>> getSequences() {
         return sequences;
     }
 
-    public void setSequences(Map<String, List<String>> sequences) {
+    public void setSequences(Map<String, List<JsonObject>> sequences) {
         this.sequences = sequences;
     }
 
-    public void addSequence(String key, String value) {
+    public void addSequence(String key, JsonObject value) {
         this.sequences.computeIfAbsent(key, (v) -> new ArrayList<>());
-        List<String> values = this.sequences.get(key);
+        List<JsonObject> values = this.sequences.get(key);
         values.add(value);
         this.sequences.put(key, values);
     }
@@ -28,6 +28,7 @@ public class FhirSubmissionResponse {
 
     private String id;
     private String url;
+    private boolean created;
 
     public FhirSubmissionResponse() {
 
@@ -38,6 +39,12 @@ public class FhirSubmissionResponse {
         this.url = url;
     }
 
+    public FhirSubmissionResponse(String id, String url, boolean created) {
+        this.id = id;
+        this.url = url;
+        this.created = created;
+    }
+
     public String getId() {
         return id;
     }
@@ -53,4 +60,16 @@ public class FhirSubmissionResponse {
     public void setUrl(String url) {
         this.url = url;
     }
+
+    /**
+     * {@code true} when the server wrote a new resource, {@code false} when a conditional create
+     * matched one that already existed.
+     */
+    public boolean isCreated() {
+        return created;
+    }
+
+    public void setCreated(boolean created) {
+        this.created = created;
+    }
 }
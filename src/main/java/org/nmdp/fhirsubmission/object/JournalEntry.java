@@ -0,0 +1,116 @@
+package org.nmdp.fhirsubmission.object;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * One patient transaction the submission journal holds no acknowledgement for, in the state it
+ * was last recorded in, with the chunks of it the server had already acknowledged.
+ */
+public class JournalEntry {
+
+    public enum State {
+        /**
+         * Encoded and journaled, not yet handed to the sender.
+         */
+        PENDING,
+        /**
+         * Handed to the sender; the server may or may not have accepted it.
+         */
+        SENT
+    }
+
+    private long id;
+    private State state;
+    private byte[] bundle;
+    private Set<Integer> acknowledgedChunks;
+    private TransactionResponse acknowledged;
+
+    public JournalEntry() {
+        this.acknowledgedChunks = new TreeSet<>();
+        this.acknowledged = new TransactionResponse();
+    }
+
+    public JournalEntry(long id, State state, byte[] bundle) {
+        this();
+        this.id = id;
+        this.state = state;
+        this.bundle = bundle;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public void setState(State state) {
+        this.state = state;
+    }
+
+    /**
+     * The journaled {@code PatientTransaction}, its chunks and result keys, as UTF-8 JSON.
+     */
+    public byte[] getBundle() {
+        return bundle;
+    }
+
+    public void setBundle(byte[] bundle) {
+        this.bundle = bundle;
+    }
+
+    /**
+     * Indexes of the chunks the server acknowledged; they must not be sent again.
+     */
+    public Set<Integer> getAcknowledgedChunks() {
+        return acknowledgedChunks;
+    }
+
+    public void setAcknowledgedChunks(Set<Integer> acknowledgedChunks) {
+        this.acknowledgedChunks = acknowledgedChunks;
+    }
+
+    /**
+     * The results of the entries of the acknowledged chunks, which the remaining chunks refer to.
+     */
+    public TransactionResponse getAcknowledged() {
+        return acknowledged;
+    }
+
+    public void setAcknowledged(TransactionResponse acknowledged) {
+        this.acknowledged = acknowledged;
+    }
+
+    public void addAcknowledgedChunk(int chunk, TransactionResponse results) {
+        this.acknowledgedChunks.add(chunk);
+        results.getResults().forEach(this.acknowledged::addResult);
+    }
+}
@@ -0,0 +1,159 @@
+package org.nmdp.fhirsubmission.object;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * One patient's transaction, ready to send, with the {@code fullUrl}s of its entries mapped to
+ * the keys {@link HmlSubmission} records them under: the patient and specimen
+ * {@code system*value} identifiers and the observation genotypes. Diagnostic reports are keyed
+ * by their specimen.
+ */
+public class PatientTransaction {
+    private String patientId;
+    private String patientFullUrl;
+    private Map<String, String> specimens;
+    private Map<String, String> diagnosticReports;
+    private Map<String, String> observations;
+    private List<JsonObject> chunks;
+    private transient long bytes;
+
+    public PatientTransaction() {
+        this.specimens = new LinkedHashMap<>();
+        this.diagnosticReports = new LinkedHashMap<>();
+        this.observations = new LinkedHashMap<>();
+        this.chunks = new ArrayList<>();
+    }
+
+    public String getPatientId() {
+        return patientId;
+    }
+
+    public void setPatientId(String patientId) {
+        this.patientId = patientId;
+    }
+
+    public String getPatientFullUrl() {
+        return patientFullUrl;
+    }
+
+    public void setPatientFullUrl(String patientFullUrl) {
+        this.patientFullUrl = patientFullUrl;
+    }
+
+    public Map<String, String> getSpecimens() {
+        return specimens;
+    }
+
+    public void setSpecimens(Map<String, String> specimens) {
+        this.specimens = specimens;
+    }
+
+    public void addSpecimen(String fullUrl, String id) {
+        this.specimens.put(fullUrl, id);
+    }
+
+    public Map<String, String> getDiagnosticReports() {
+        return diagnosticReports;
+    }
+
+    public void setDiagnosticReports(Map<String, String> diagnosticReports) {
+        this.diagnosticReports = diagnosticReports;
+    }
+
+    public void addDiagnosticReport(String fullUrl, String id) {
+        this.diagnosticReports.put(fullUrl, id);
+    }
+
+    public Map<String, String> getObservations() {
+        return observations;
+    }
+
+    public void setObservations(Map<String, String> observations) {
+        this.observations = observations;
+    }
+
+    public void addObservation(String fullUrl, String id) {
+        this.observations.put(fullUrl, id);
+    }
+
+    /**
+     * The transaction cut to the splitter's limits; the chunks have to be sent in order.
+     */
+    public List<JsonObject> getChunks() {
+        return chunks;
+    }
+
+    public void setChunks(List<JsonObject> chunks) {
+        this.chunks = chunks;
+    }
+
+    /**
+     * Estimated encoded size of the chunks, which counts against the submission's byte budget
+     * while the transaction is in flight. It is not journaled.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    public void setBytes(long bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * What the server answered, filed under the patient's keys. Entries without a result, such
+     * as those of a transaction that failed, are left out.
+     */
+    public HmlSubmission toSubmission(TransactionResponse response) {
+        HmlSubmission submission = new HmlSubmission();
+
+        submission.setPatientId(patientId);
+
+        if (response == null) {
+            return submission;
+        }
+
+        submission.setPatientResource(response.getResult(patientFullUrl));
+        specimens.forEach((fullUrl, id) -> addResult(response, fullUrl, id, submission::addSpecimen));
+        observations.forEach((fullUrl, id) -> addResult(response, fullUrl, id, submission::addObservation));
+        diagnosticReports.forEach((fullUrl, id) -> addResult(response, fullUrl, id, submission::addDiagnosticReport));
+
+        return submission;
+    }
+
+    private void addResult(TransactionResponse response, String fullUrl, String id,
+                           BiConsumer<String, FhirSubmissionResponse> target) {
+        FhirSubmissionResponse result = response.getResult(fullUrl);
+
+        if (result != null) {
+            target.accept(id, result);
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package org.nmdp.fhirsubmission.object;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import org.nmdp.fhirsubmission.http.CircuitBreaker;
+import org.nmdp.fhirsubmission.http.HttpClientPool;
+import org.nmdp.fhirsubmission.http.Post;
+import org.nmdp.fhirsubmission.http.RetryPolicy;
+import org.nmdp.fhirsubmission.metrics.NoOpSubmissionMetrics;
+import org.nmdp.fhirsubmission.metrics.SubmissionMetrics;
+import org.nmdp.fhirsubmission.util.BundleSplitter;
+import org.nmdp.fhirsubmission.util.FhirMessageUtil;
+import org.nmdp.fhirsubmission.util.RandomReferenceIdAllocator;
+import org.nmdp.fhirsubmission.util.ReferenceIdAllocator;
+import org.nmdp.fhirsubmission.util.SubmissionJournal;
+import org.nmdp.fhirsubmission.util.TransactionBatcher;
+
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+public class SubmissionConfiguration {
+
+    public static final String DEFAULT_BASE_URL = "http://fhirtest.b12x.org/baseDstu3/";
+
+    private String baseUrl;
+    private int bundlerThreads;
+    private int maxConnections;
+    private int maxConnectionsPerRoute;
+    private long keepAliveMillis;
+    private long idleConnectionTimeoutMillis;
+    private int connectTimeoutMillis;
+    private int connectionRequestTimeoutMillis;
+    private int socketTimeoutMillis;
+    private int maxInFlightBundles;
+    private int maxBundleEntries;
+    private long maxBundleBytes;
+    private long batchLingerMillis;
+    private Set<String> compressedEndpoints;
+    private ReferenceIdAllocator referenceIdAllocator;
+    private SubmissionMetrics metrics;
+    private Path journalPath;
+    private RetryPolicy retryPolicy;
+    private int circuitBreakerFailureThreshold;
+    private long circuitBreakerOpenMillis;
+    private int maxPendingPatients;
+    private long maxPendingBytes;
+    private long journalSyncMillis;
+    private long journalCompactBytes;
+
+    public SubmissionConfiguration() {
+        this.baseUrl = DEFAULT_BASE_URL;
+        this.bundlerThreads = Runtime.getRuntime().availableProcessors();
+        this.maxConnections = HttpClientPool.DEFAULT_MAX_TOTAL;
+        this.maxConnectionsPerRoute = HttpClientPool.DEFAULT_MAX_PER_ROUTE;
+        this.keepAliveMillis = HttpClientPool.DEFAULT_KEEP_ALIVE_MILLIS;
+        this.idleConnectionTimeoutMillis = HttpClientPool.DEFAULT_IDLE_TIMEOUT_MILLIS;
+        this.connectTimeoutMillis = HttpClientPool.DEFAULT_CONNECT_TIMEOUT_MILLIS;
+        this.connectionRequestTimeoutMillis = HttpClientPool.DEFAULT_CONNECTION_REQUEST_TIMEOUT_MILLIS;
+        this.socketTimeoutMillis = HttpClientPool.DEFAULT_SOCKET_TIMEOUT_MILLIS;
+        this.maxInFlightBundles = Post.DEFAULT_MAX_IN_FLIGHT;
+        this.maxBundleEntries = BundleSplitter.DEFAULT_MAX_ENTRIES;
+        this.maxBundleBytes = BundleSplitter.DEFAULT_MAX_BYTES;
+        this.batchLingerMillis = TransactionBatcher.DEFAULT_LINGER_MILLIS;
+        this.compressedEndpoints = new HashSet<>();
+        this.referenceIdAllocator = new RandomReferenceIdAllocator();
+        this.metrics = new NoOpSubmissionMetrics();
+        this.journalSyncMillis = SubmissionJournal.DEFAULT_SYNC_MILLIS;
+        this.journalCompactBytes = SubmissionJournal.DEFAULT_COMPACT_BYTES;
+        this.retryPolicy = new RetryPolicy();
+        this.circuitBreakerFailureThreshold = CircuitBreaker.DEFAULT_FAILURE_THRESHOLD;
+        this.circuitBreakerOpenMillis = CircuitBreaker.DEFAULT_OPEN_MILLIS;
+        this.maxPendingPatients = FhirMessageUtil.DEFAULT_MAX_PENDING_PATIENTS;
+        this.maxPendingBytes = FhirMessageUtil.DEFAULT_MAX_PENDING_BYTES;
+    }
+
+    /**
+     * Base of the FHIR server's REST API, including the trailing slash.
+     */
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public void setBaseUrl(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    public int getBundlerThreads() {
+        return bundlerThreads;
+    }
+
+    public void setBundlerThreads(int bundlerThreads) {
+        this.bundlerThreads = bundlerThreads;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    public long getKeepAliveMillis() {
+        return keepAliveMillis;
+    }
+
+    public void setKeepAliveMillis(long keepAliveMillis) {
+        this.keepAliveMillis = keepAliveMillis;
+    }
+
+    public long getIdleConnectionTimeoutMillis() {
+        return idleConnectionTimeoutMillis;
+    }
+
+    public void setIdleConnectionTimeoutMillis(long idleConnectionTimeoutMillis) {
+        this.idleConnectionTimeoutMillis = idleConnectionTimeoutMillis;
+    }
+
+    /**
+     * How long opening a connection to the server may take; such failures are retried.
+     */
+    public int getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    /**
+     * How long a request waits for a free pooled connection; such failures are retried.
+     */
+    public int getConnectionRequestTimeoutMillis() {
+        return connectionRequestTimeoutMillis;
+    }
+
+    public void setConnectionRequestTimeoutMillis(int connectionRequestTimeoutMillis) {
+        this.connectionRequestTimeoutMillis = connectionRequestTimeoutMillis;
+    }
+
+    /**
+     * Longest silence allowed while the server answers. The request has been sent by then, so a
+     * timeout fails it without a retry.
+     */
+    public int getSocketTimeoutMillis() {
+        return socketTimeoutMillis;
+    }
+
+    public void setSocketTimeoutMillis(int socketTimeoutMillis) {
+        this.socketTimeoutMillis = socketTimeoutMillis;
+    }
+
+    public int getMaxInFlightBundles() {
+        return maxInFlightBundles;
+    }
+
+    public void setMaxInFlightBundles(int maxInFlightBundles) {
+        this.maxInFlightBundles = maxInFlightBundles;
+    }
+
+    /**
+     * Largest number of entries sent in one transaction; bigger patient bundles are split.
+     */
+    public int getMaxBundleEntries() {
+        return maxBundleEntries;
+    }
+
+    public void setMaxBundleEntries(int maxBundleEntries) {
+        this.maxBundleEntries = maxBundleEntries;
+    }
+
+    /**
+     * Approximate upper bound on the JSON size of one transaction, in bytes.
+     */
+    public long getMaxBundleBytes() {
+        return maxBundleBytes;
+    }
+
+    public void setMaxBundleBytes(long maxBundleBytes) {
+        this.maxBundleBytes = maxBundleBytes;
+    }
+
+    /**
+     * How long a small patient transaction waits for others to share a bundle with. The same
+     * entry and size limits apply to the merged bundle.
+     */
+    public long getBatchLingerMillis() {
+        return batchLingerMillis;
+    }
+
+    public void setBatchLingerMillis(long batchLingerMillis) {
+        this.batchLingerMillis = batchLingerMillis;
+    }
+
+    /**
+     * Resource types whose requests are gzip-compressed, for example {@code Bundle} and
+     * {@code Sequence}. Empty by default; the server has to accept {@code Content-Encoding: gzip}.
+     */
+    public Set<String> getCompressedEndpoints() {
+        return compressedEndpoints;
+    }
+
+    public void setCompressedEndpoints(Set<String> compressedEndpoints) {
+        this.compressedEndpoints = compressedEndpoints;
+    }
+
+    /**
+     * Source of the bundle-local {@code urn:uuid} ids. Defaults to fast random ids; use
+     * {@code NameBasedReferenceIdAllocator} for {@code fullUrl}s that are stable across
+     * resubmissions.
+     */
+    public ReferenceIdAllocator getReferenceIdAllocator() {
+        return referenceIdAllocator;
+    }
+
+    public void setReferenceIdAllocator(ReferenceIdAllocator referenceIdAllocator) {
+        this.referenceIdAllocator = referenceIdAllocator;
+    }
+
+    /**
+     * File of the submission journal, which lets an interrupted submission be resumed; no
+     * journal is kept when this is {@code null}, the default.
+     */
+    public Path getJournalPath() {
+        return journalPath;
+    }
+
+    public void setJournalPath(Path journalPath) {
+        this.journalPath = journalPath;
+    }
+
+    /**
+     * How often the journal is forced to disk; zero forces it only when a submission completes.
+     */
+    public long getJournalSyncMillis() {
+        return journalSyncMillis;
+    }
+
+    public void setJournalSyncMillis(long journalSyncMillis) {
+        this.journalSyncMillis = journalSyncMillis;
+    }
+
+    /**
+     * Bytes of records of finished transactions after which the journal is compacted down to the
+     * transactions still in flight.
+     */
+    public long getJournalCompactBytes() {
+        return journalCompactBytes;
+    }
+
+    public void setJournalCompactBytes(long journalCompactBytes) {
+        this.journalCompactBytes = journalCompactBytes;
+    }
+
+    /**
+     * How requests that fail with a throttling or gateway status, or cannot get a connection, are
+     * retried; {@link RetryPolicy#none()} sends each request once.
+     */
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Consecutive failed attempts after which requests are held back from the server.
+     */
+    public int getCircuitBreakerFailureThreshold() {
+        return circuitBreakerFailureThreshold;
+    }
+
+    public void setCircuitBreakerFailureThreshold(int circuitBreakerFailureThreshold) {
+        this.circuitBreakerFailureThreshold = circuitBreakerFailureThreshold;
+    }
+
+    /**
+     * How long requests are held back once the breaker opens, before a probe is let through.
+     */
+    public long getCircuitBreakerOpenMillis() {
+        return circuitBreakerOpenMillis;
+    }
+
+    public void setCircuitBreakerOpenMillis(long circuitBreakerOpenMillis) {
+        this.circuitBreakerOpenMillis = circuitBreakerOpenMillis;
+    }
+
+    /**
+     * Patients a streaming submission holds at once, being bundled or awaiting their response;
+     * the next patient is pulled only when one of them is answered.
+     */
+    public int getMaxPendingPatients() {
+        return maxPendingPatients;
+    }
+
+    public void setMaxPendingPatients(int maxPendingPatients) {
+        this.maxPendingPatients = maxPendingPatients;
+    }
+
+    /**
+     * Estimated bytes of bundled transactions sent and awaiting their response, across all
+     * submissions of one {@link org.nmdp.fhirsubmission.FhirSubmission}. Once it is spent, bundled
+     * transactions wait to be sent without holding a bundling thread, and no more patients are
+     * pulled than {@link #getMaxPendingPatients()} allows.
+     */
+    public long getMaxPendingBytes() {
+        return maxPendingBytes;
+    }
+
+    public void setMaxPendingBytes(long maxPendingBytes) {
+        this.maxPendingBytes = maxPendingBytes;
+    }
+
+    /**
+     * Where the bundler, the sender and the pipeline report stage timings, bytes, bundle sizes,
+     * queue depths and outcomes; nothing is kept by default. A
+     * {@link org.nmdp.fhirsubmission.metrics.JmxSubmissionMetrics} publishes them over JMX.
+     */
+    public SubmissionMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(SubmissionMetrics metrics) {
+        this.metrics = metrics;
+    }
+}
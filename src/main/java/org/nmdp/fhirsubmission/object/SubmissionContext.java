@@ -0,0 +1,58 @@
+package org.nmdp.fhirsubmission.object;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import org.nmdp.fhirsubmission.util.DateParser;
+
+import java.time.Clock;
+import java.time.Instant;
+
+/**
+ * State shared by every resource serialized for one submission. The submission time is captured
+ * once, so all resources of a bundle carry the same {@code issued} and {@code effectiveDateTime},
+ * and it is formatted once rather than per resource.
+ */
+public class SubmissionContext {
+    private final Instant submittedAt;
+    private final String timestamp;
+
+    public SubmissionContext() {
+        this(Clock.systemUTC());
+    }
+
+    public SubmissionContext(Clock clock) {
+        this.submittedAt = clock.instant();
+        this.timestamp = DateParser.format(submittedAt);
+    }
+
+    public Instant getSubmittedAt() {
+        return submittedAt;
+    }
+
+    /**
+     * The submission time as a FHIR {@code instant}, e.g. {@code 2017-10-11T14:03:00Z}.
+     */
+    public String getTimestamp() {
+        return timestamp;
+    }
+}
@@ -0,0 +1,62 @@
+package org.nmdp.fhirsubmission.object;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * What the server answered to one patient's transaction, possibly sent as several chunks: the
+ * result of each entry, keyed by the entry's {@code fullUrl}. A result's url is the location the
+ * server reported, and it is marked created unless a conditional create matched an existing
+ * resource.
+ */
+public class TransactionResponse {
+    private Map<String, FhirSubmissionResponse> results;
+
+    public TransactionResponse() {
+        this.results = new LinkedHashMap<>();
+    }
+
+    public Map<String, FhirSubmissionResponse> getResults() {
+        return results;
+    }
+
+    public void setResults(Map<String, FhirSubmissionResponse> results) {
+        this.results = results;
+    }
+
+    public void addResult(String fullUrl, FhirSubmissionResponse result) {
+        this.results.put(fullUrl, result);
+    }
+
+    public FhirSubmissionResponse getResult(String fullUrl) {
+        return results.get(fullUrl);
+    }
+
+    public String getLocation(String fullUrl) {
+        FhirSubmissionResponse result = results.get(fullUrl);
+
+        return result == null ? null : result.getUrl();
+    }
+}
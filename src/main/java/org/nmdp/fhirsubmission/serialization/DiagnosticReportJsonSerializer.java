@@ -27,7 +27,7 @@ package org.nmdp.fhirsubmission.serialization;
 import com.google.gson.*;
 
 import org.nmdp.fhirsubmission.object.FhirSubmissionResponse;
-import org.nmdp.fhirsubmission.util.DateParser;
+import org.nmdp.fhirsubmission.object.SubmissionContext;
 import org.nmdp.hmlfhirconvertermodels.domain.fhir.*;
 import org.nmdp.hmlfhirconvertermodels.domain.fhir.lists.Glstrings;
 import org.nmdp.hmlfhirconvertermodels.domain.fhir.lists.Observations;
@@ -90,18 +90,20 @@ public class DiagnosticReportJsonSerializer implements JsonSerializer<Specimen>
 
     @Override
     public JsonElement serialize(Specimen src, Type typeOfSource, JsonSerializationContext context) {
-        JsonObject code = new JsonObject();
-        JsonObject codeCoding = new JsonObject();
+        return serialize(src, new SubmissionContext());
+    }
+
+    /**
+     * Serializes {@code src} with the submission's timestamp as both {@code effectiveDateTime}
+     * and {@code issued}.
+     */
+    public JsonObject serialize(Specimen src, SubmissionContext submission) {
 //        JsonObject basedOn = new JsonObject();
-        JsonObject category = new JsonObject();
-        JsonObject categoryCoding = new JsonObject();
         JsonObject diagnosticReport = new JsonObject();
         JsonObject subject = new JsonObject();
         JsonObject specimen = new JsonObject();
-        JsonObject performer = new JsonObject();
         JsonObject glStringExtension = new JsonObject();
         JsonArray glStringExtensions = new JsonArray();
-        JsonObject glStringExtensionUri = new JsonObject();
         JsonArray glStrings = new JsonArray();
         JsonObject glStringExtensionValue = new JsonObject();
         JsonArray results = new JsonArray();
@@ -112,22 +114,12 @@ public class DiagnosticReportJsonSerializer implements JsonSerializer<Specimen>
 
         diagnosticReport.addProperty(RESOURCE_KEY, RESOURCE_VALUE);
         diagnosticReport.addProperty(STATUS_KEY, STATUS_VALUE);
-        diagnosticReport.addProperty(EFFECTIVE_DATE_TIME_KEY, DateParser.parseDate(new Date()));
-        diagnosticReport.addProperty(ISSUED_KEY, DateParser.parseDate(new Date()));
-
-        codeCoding.addProperty(SYSTEM_KEY, CODE_CODING_SYSTEM_VALUE);
-        codeCoding.addProperty(CODE_KEY, CODE_CODING_CODE_VALUE);
-        codeCoding.addProperty(DISPLAY_KEY, DISPLAY_VALUE);
-        code.add(CODING_KEY, codeCoding);
+        diagnosticReport.addProperty(EFFECTIVE_DATE_TIME_KEY, submission.getTimestamp());
+        diagnosticReport.addProperty(ISSUED_KEY, submission.getTimestamp());
 
 //        basedOn.addProperty(REFERENCE_KEY, BLANK);
 //        basedOn.addProperty(DISPLAY_KEY, PATIENT_RESOURCE);
 
-        categoryCoding.addProperty(SYSTEM_KEY, CATEGORY_CODE_SYSTEM);
-        categoryCoding.addProperty(CODE_KEY, CATEGORY_CODE_VALUE);
-        categoryCoding.addProperty(DISPLAY_KEY, CATEGORY_CODE_DISPLAY);
-        category.add(CODING_KEY, categoryCoding);
-
         if (response != null) {
             subject.addProperty(REFERENCE_KEY, response.getUrl());
             subject.addProperty(DISPLAY_KEY, PATIENT_RESOURCE);
@@ -138,9 +130,6 @@ public class DiagnosticReportJsonSerializer implements JsonSerializer<Specimen>
             specimen.addProperty(DISPLAY_KEY, SPECIMEN_RESOURCE);
         }
 
-        performer.addProperty(REFERENCE_KEY, REFERENCE_VALUE);
-        performer.addProperty(DISPLAY_KEY, REFERENCE_DISPLAY_VALUE);
-
         for (Observation observation : observations.getObservations()) {
             Glstrings glstrings = observation.getGlstrings();
             List<String> gls = new ArrayList<>();
@@ -169,9 +158,7 @@ public class DiagnosticReportJsonSerializer implements JsonSerializer<Specimen>
 
         glStringExtensionValue.addProperty(VALUE_STRING_KEY, alleleGlstring);
         glStringExtensionValue.addProperty(URL_KEY, EXTENSION_VALUE_VALUE);
-        glStringExtensionUri.addProperty(VALUE_URI_KEY, VALUE_URI_VALUE);
-        glStringExtensionUri.addProperty(URL_KEY, EXTENSION_URI_VALUE);
-        glStrings.add(glStringExtensionUri);
+        glStrings.add(createExtensionUri());
         glStrings.add(glStringExtensionValue);
         glStringExtension.addProperty(XMLNS_KEY, XMLNS_VALUE);
         glStringExtension.addProperty(URL_KEY, EXTENSION_URL_VALUE);
@@ -179,14 +166,42 @@ public class DiagnosticReportJsonSerializer implements JsonSerializer<Specimen>
         glStringExtensions.add(glStringExtension);
 
         diagnosticReport.add(RESULT_KEY, results);
-        diagnosticReport.add(CODE_KEY, code);
-        diagnosticReport.add(CATEGORY_KEY, category);
+        diagnosticReport.add(CODE_KEY, createCode());
+        diagnosticReport.add(CATEGORY_KEY, createCategory());
 //        diagnosticReport.add(BASED_ON_KEY, basedOn);
         diagnosticReport.add(SUBJECT_KEY, subject);
         diagnosticReport.add(SPECIMEN_KEY, specimen);
-        diagnosticReport.add(PERFORMER_KEY, performer);
+        diagnosticReport.add(PERFORMER_KEY, createPerformer());
         diagnosticReport.add(EXTENSION_KEY, glStringExtensions);
 
         return diagnosticReport;
     }
+
+    static JsonObject createCode() {
+        return JsonFragments.wrap(CODING_KEY,
+                JsonFragments.coding(CODE_CODING_SYSTEM_VALUE, CODE_CODING_CODE_VALUE, DISPLAY_VALUE));
+    }
+
+    static JsonObject createCategory() {
+        return JsonFragments.wrap(CODING_KEY,
+                JsonFragments.coding(CATEGORY_CODE_SYSTEM, CATEGORY_CODE_VALUE, CATEGORY_CODE_DISPLAY));
+    }
+
+    static JsonObject createPerformer() {
+        JsonObject performer = new JsonObject();
+
+        performer.addProperty(REFERENCE_KEY, REFERENCE_VALUE);
+        performer.addProperty(DISPLAY_KEY, REFERENCE_DISPLAY_VALUE);
+
+        return performer;
+    }
+
+    static JsonObject createExtensionUri() {
+        JsonObject glStringExtensionUri = new JsonObject();
+
+        glStringExtensionUri.addProperty(VALUE_URI_KEY, VALUE_URI_VALUE);
+        glStringExtensionUri.addProperty(URL_KEY, EXTENSION_URI_VALUE);
+
+        return glStringExtensionUri;
+    }
 }
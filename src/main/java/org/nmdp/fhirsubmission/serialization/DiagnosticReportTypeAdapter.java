@@ -0,0 +1,162 @@
+package org.nmdp.fhirsubmission.serialization;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import com.google.gson.stream.JsonWriter;
+
+import org.nmdp.fhirsubmission.object.FhirSubmissionResponse;
+import org.nmdp.fhirsubmission.object.SubmissionContext;
+import org.nmdp.hmlfhirconvertermodels.domain.fhir.*;
+import org.nmdp.hmlfhirconvertermodels.domain.fhir.lists.Glstrings;
+import org.nmdp.hmlfhirconvertermodels.domain.fhir.lists.Observations;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Streaming counterpart of {@link DiagnosticReportJsonSerializer}: writes the same JSON directly
+ * to the writer without building an intermediate tree.
+ */
+public class DiagnosticReportTypeAdapter extends StreamingJsonSerializer<Specimen> {
+
+    private static final String STATUS_KEY = "status";
+    private static final String EFFECTIVE_DATE_TIME_KEY = "effectiveDateTime";
+    private static final String ISSUED_KEY = "issued";
+    private static final String CODE_KEY = "code";
+    private static final String DISPLAY_KEY = "display";
+    private static final String CATEGORY_KEY = "category";
+    private static final String RESOURCE_KEY = "resourceType";
+    private static final String RESULT_KEY = "result";
+    private static final String SUBJECT_KEY = "subject";
+    private static final String SPECIMEN_KEY = "specimen";
+    private static final String PERFORMER_KEY = "performer";
+    private static final String EXTENSION_KEY = "extension";
+    private static final String XMLNS_KEY = "xmlns";
+    private static final String URL_KEY = "url";
+    private static final String VALUE_STRING_KEY = "valueString";
+    private static final String REFERENCE_KEY = "reference";
+
+    private static final String SPECIMEN_RESOURCE = "Specimen";
+    private static final String PATIENT_RESOURCE = "Patient";
+    private static final String RESOURCE_VALUE = "DiagnosticReport";
+    private static final String STATUS_VALUE = "final";
+    private static final String EXTENSION_VALUE_VALUE = "text";
+    private static final String XMLNS_VALUE = "http://hl7.org/fhir";
+    private static final String EXTENSION_URL_VALUE = "http://hl7.org/fhir/StructureDefinition/hla-genotyping-resultsGlstring";
+
+    private static final String GL_STRING_JOINING_CHARACTER = "+";
+    private static final String GL_STRING_ALLELE_JOINING_CHARACTER = "^";
+
+    private static final String CODE_JSON = JsonFragments.encode(DiagnosticReportJsonSerializer.createCode());
+    private static final String CATEGORY_JSON = JsonFragments.encode(DiagnosticReportJsonSerializer.createCategory());
+    private static final String PERFORMER_JSON = JsonFragments.encode(DiagnosticReportJsonSerializer.createPerformer());
+    private static final String GL_STRING_EXTENSION_URI_JSON =
+            JsonFragments.encode(DiagnosticReportJsonSerializer.createExtensionUri());
+
+    public DiagnosticReportTypeAdapter() {
+        super(Specimen.class);
+    }
+
+    @Override
+    public void write(JsonWriter out, Specimen src) throws IOException {
+        write(out, src, new SubmissionContext());
+    }
+
+    public void write(JsonWriter out, Specimen src, SubmissionContext submission) throws IOException {
+        Observations observations = src.getObservations();
+        FhirSubmissionResponse response = (FhirSubmissionResponse) src.getSubject();
+        FhirSubmissionResponse reference = (FhirSubmissionResponse) src.getReference();
+        List<List<String>> glSegments = new ArrayList<>();
+
+        out.beginObject();
+        out.name(RESOURCE_KEY).value(RESOURCE_VALUE);
+        out.name(STATUS_KEY).value(STATUS_VALUE);
+        out.name(EFFECTIVE_DATE_TIME_KEY).value(submission.getTimestamp());
+        out.name(ISSUED_KEY).value(submission.getTimestamp());
+        out.name(RESULT_KEY).beginArray();
+
+        for (Observation observation : observations.getObservations()) {
+            Glstrings glstrings = observation.getGlstrings();
+            List<String> gls = new ArrayList<>();
+
+            for (Glstring glstring : glstrings.getGlstrings()) {
+                String glStringValue = glstring.getValue();
+                FhirSubmissionResponse observationResponse = (FhirSubmissionResponse) observation.getValue();
+                gls.add(glStringValue);
+
+                out.beginObject();
+
+                if (observationResponse != null) {
+                    out.name(REFERENCE_KEY).value(observationResponse.getUrl());
+                }
+
+                out.name(DISPLAY_KEY).value(glStringValue);
+                out.endObject();
+            }
+
+            glSegments.add(gls);
+        }
+
+        out.endArray();
+
+        String alleleGlstring = glSegments.stream().map(allele -> allele
+            .stream().collect(Collectors.joining(GL_STRING_JOINING_CHARACTER)))
+            .collect(Collectors.joining(GL_STRING_ALLELE_JOINING_CHARACTER));
+
+        out.name(CODE_KEY).jsonValue(CODE_JSON);
+        out.name(CATEGORY_KEY).jsonValue(CATEGORY_JSON);
+        out.name(SUBJECT_KEY).beginObject();
+
+        if (response != null) {
+            out.name(REFERENCE_KEY).value(response.getUrl());
+            out.name(DISPLAY_KEY).value(PATIENT_RESOURCE);
+        }
+
+        out.endObject();
+        out.name(SPECIMEN_KEY).beginObject();
+
+        if (reference != null) {
+            out.name(REFERENCE_KEY).value(reference.getUrl());
+            out.name(DISPLAY_KEY).value(SPECIMEN_RESOURCE);
+        }
+
+        out.endObject();
+        out.name(PERFORMER_KEY).jsonValue(PERFORMER_JSON);
+        out.name(EXTENSION_KEY).beginArray();
+        out.beginObject();
+        out.name(XMLNS_KEY).value(XMLNS_VALUE);
+        out.name(URL_KEY).value(EXTENSION_URL_VALUE);
+        out.name(EXTENSION_KEY).beginArray();
+        out.jsonValue(GL_STRING_EXTENSION_URI_JSON);
+        out.beginObject();
+        out.name(VALUE_STRING_KEY).value(alleleGlstring);
+        out.name(URL_KEY).value(EXTENSION_VALUE_VALUE);
+        out.endObject();
+        out.endArray();
+        out.endObject();
+        out.endArray();
+        out.endObject();
+    }
+}
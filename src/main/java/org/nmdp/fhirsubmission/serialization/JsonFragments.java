@@ -0,0 +1,91 @@
+package org.nmdp.fhirsubmission.serialization;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+
+/**
+ * Helpers for the constant parts of the resources. The tree serializers build a fresh copy of
+ * each constant subtree for every resource, since the bundling code edits resource trees in
+ * place. The streaming adapters encode the same subtrees once and write that text with
+ * {@link JsonWriter#jsonValue(String)}, which copies it without walking or escaping it.
+ */
+final class JsonFragments {
+
+    private static final String SYSTEM_KEY = "system";
+    private static final String CODE_KEY = "code";
+    private static final String DISPLAY_KEY = "display";
+    private static final TypeAdapter<JsonElement> ELEMENT_ADAPTER = new Gson().getAdapter(JsonElement.class);
+
+    private JsonFragments() {
+    }
+
+    static JsonObject coding(String system, String code, String display) {
+        JsonObject coding = new JsonObject();
+
+        coding.addProperty(SYSTEM_KEY, system);
+        coding.addProperty(CODE_KEY, code);
+
+        if (display != null) {
+            coding.addProperty(DISPLAY_KEY, display);
+        }
+
+        return coding;
+    }
+
+    static JsonObject wrap(String key, JsonElement value) {
+        JsonObject json = new JsonObject();
+
+        json.add(key, value);
+
+        return json;
+    }
+
+    /**
+     * Compact JSON for {@code element}, escaped the way a default {@link Gson} escapes it, HTML
+     * characters such as {@code <}, {@code >}, {@code &}, {@code =} and {@code '} included, so a
+     * spliced fragment is byte-identical to writing the tree through Gson.
+     */
+    static String encode(JsonElement element) {
+        StringWriter out = new StringWriter();
+        JsonWriter writer = new JsonWriter(out);
+
+        writer.setHtmlSafe(true);
+
+        try {
+            ELEMENT_ADAPTER.write(writer, element);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        return out.toString();
+    }
+}
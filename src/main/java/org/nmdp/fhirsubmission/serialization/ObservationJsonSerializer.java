@@ -28,7 +28,7 @@ package org.nmdp.fhirsubmission.serialization;
 import com.google.gson.*;
 
 import org.nmdp.fhirsubmission.object.FhirSubmissionResponse;
-import org.nmdp.fhirsubmission.util.DateParser;
+import org.nmdp.fhirsubmission.object.SubmissionContext;
 import org.nmdp.hmlfhirconvertermodels.domain.fhir.*;
 import org.nmdp.hmlfhirconvertermodels.domain.fhir.lists.Glstrings;
 import org.nmdp.hmlfhirconvertermodels.domain.fhir.lists.Observations;
@@ -62,15 +62,19 @@ public class ObservationJsonSerializer implements JsonSerializer<Observation> {
 
     private static final String BLANK = "";
     private static final String GL_STRING_JOINING_CHARACTER = "+";
+    private static final String ALLELE_CODE_SEPARATOR = ",";
 
     @Override
     public JsonElement serialize(Observation src, Type typeOfSource, JsonSerializationContext context) {
+        return serialize(src, new SubmissionContext());
+    }
+
+    /**
+     * Serializes {@code src} with the submission's timestamp as {@code issued}.
+     */
+    public JsonObject serialize(Observation src, SubmissionContext submission) {
         JsonObject obs = new JsonObject();
-        JsonObject code = new JsonObject();
-        JsonObject codeCoding = new JsonObject();
-        JsonObject defaultCoding = new JsonObject();
         JsonObject subject = new JsonObject();
-        JsonArray codingArray = new JsonArray();
         Glstrings glstrings = src.getGlstrings();
         List<String> glstringValues = new ArrayList<>();
         FhirSubmissionResponse response = (FhirSubmissionResponse) src.getReference();
@@ -83,22 +87,9 @@ public class ObservationJsonSerializer implements JsonSerializer<Observation> {
 
         obs.addProperty(RESOURCE_KEY, RESOURCE_VALUE);
         obs.addProperty(STATUS_KEY, STATUS_VALUE);
-        obs.addProperty(ISSUED_KEY, DateParser.parseDate(new Date()));
+        obs.addProperty(ISSUED_KEY, submission.getTimestamp());
         obs.addProperty(VALUE_KEY, glsv);
 
-        String[] alleleCodes = getAlleleCode(glsv).split(",");
-        String[] defaultCodes = getAlleleCode("").split(",");
-
-        codeCoding.addProperty(SYSTEM_KEY, CODE_CODING_SYSTEM_VALUE);
-        codeCoding.addProperty(CODE_KEY, alleleCodes[0]);
-        codeCoding.addProperty(DISPLAY_KEY, alleleCodes[1]);
-
-        defaultCoding.addProperty(SYSTEM_KEY, CODE_CODING_SYSTEM_VALUE);
-        defaultCoding.addProperty(CODE_KEY, defaultCodes[0]);
-        defaultCoding.addProperty(DISPLAY_KEY, defaultCodes[1]);
-        codingArray.add(codeCoding);
-        codingArray.add(defaultCoding);
-        code.add(CODING_KEY, codingArray);
 
         if (response != null) {
             subject.addProperty(REFERENCE_KEY, response.getUrl());
@@ -107,12 +98,26 @@ public class ObservationJsonSerializer implements JsonSerializer<Observation> {
         subject.addProperty(DISPLAY_KEY, BLANK);
 
         obs.add(SUBJECT_KEY, subject);
-        obs.add(CODE_KEY, code);
+        obs.add(CODE_KEY, createCode(getAlleleCode(glsv)));
 
         return obs;
     }
 
-    private String getAlleleCode(String glstring) {
+    /**
+     * The {@code code} block for a locus, from its {@link #getAlleleCode(String)} value.
+     */
+    static JsonObject createCode(String alleleCode) {
+        String[] alleleCodes = alleleCode.split(ALLELE_CODE_SEPARATOR);
+        String[] defaultCodes = getAlleleCode(BLANK).split(ALLELE_CODE_SEPARATOR);
+        JsonArray codingArray = new JsonArray();
+
+        codingArray.add(JsonFragments.coding(CODE_CODING_SYSTEM_VALUE, alleleCodes[0], alleleCodes[1]));
+        codingArray.add(JsonFragments.coding(CODE_CODING_SYSTEM_VALUE, defaultCodes[0], defaultCodes[1]));
+
+        return JsonFragments.wrap(CODING_KEY, codingArray);
+    }
+
+    static String getAlleleCode(String glstring) {
         String[] alleles = glstring.split("\\*");
 
         switch (alleles[0]) {
@@ -0,0 +1,101 @@
+package org.nmdp.fhirsubmission.serialization;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import com.google.gson.stream.JsonWriter;
+
+import org.nmdp.fhirsubmission.object.FhirSubmissionResponse;
+import org.nmdp.fhirsubmission.object.SubmissionContext;
+import org.nmdp.hmlfhirconvertermodels.domain.fhir.Glstring;
+import org.nmdp.hmlfhirconvertermodels.domain.fhir.Observation;
+import org.nmdp.hmlfhirconvertermodels.domain.fhir.lists.Glstrings;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Streaming counterpart of {@link ObservationJsonSerializer}: writes the same JSON directly to the
+ * writer without building an intermediate tree.
+ */
+public class ObservationTypeAdapter extends StreamingJsonSerializer<Observation> {
+
+    private static final String STATUS_KEY = "status";
+    private static final String RESOURCE_KEY = "resourceType";
+    private static final String CODE_KEY = "code";
+    private static final String DISPLAY_KEY = "display";
+    private static final String REFERENCE_KEY = "reference";
+    private static final String VALUE_KEY = "valueString";
+    private static final String ISSUED_KEY = "issued";
+    private static final String SUBJECT_KEY = "subject";
+
+    private static final String RESOURCE_VALUE = "Observation";
+    private static final String STATUS_VALUE = "final";
+
+    private static final String BLANK = "";
+    private static final String GL_STRING_JOINING_CHARACTER = "+";
+
+    private static final Map<String, String> CODE_JSON = new ConcurrentHashMap<>();
+
+    public ObservationTypeAdapter() {
+        super(Observation.class);
+    }
+
+    @Override
+    public void write(JsonWriter out, Observation src) throws IOException {
+        write(out, src, new SubmissionContext());
+    }
+
+    public void write(JsonWriter out, Observation src, SubmissionContext submission) throws IOException {
+        Glstrings glstrings = src.getGlstrings();
+        List<String> glstringValues = new ArrayList<>();
+        FhirSubmissionResponse response = (FhirSubmissionResponse) src.getReference();
+
+        for (Glstring glstring : glstrings.getGlstrings()) {
+            glstringValues.add(glstring.getValue());
+        }
+
+        String glsv = glstringValues.stream().collect(Collectors.joining(GL_STRING_JOINING_CHARACTER));
+        String code = CODE_JSON.computeIfAbsent(ObservationJsonSerializer.getAlleleCode(glsv),
+                alleleCode -> JsonFragments.encode(ObservationJsonSerializer.createCode(alleleCode)));
+
+        out.beginObject();
+        out.name(RESOURCE_KEY).value(RESOURCE_VALUE);
+        out.name(STATUS_KEY).value(STATUS_VALUE);
+        out.name(ISSUED_KEY).value(submission.getTimestamp());
+        out.name(VALUE_KEY).value(glsv);
+        out.name(SUBJECT_KEY).beginObject();
+
+        if (response != null) {
+            out.name(REFERENCE_KEY).value(response.getUrl());
+        }
+
+        out.name(DISPLAY_KEY).value(BLANK);
+        out.endObject();
+        out.name(CODE_KEY).jsonValue(code);
+        out.endObject();
+    }
+}
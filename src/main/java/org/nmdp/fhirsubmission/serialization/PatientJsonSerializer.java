@@ -49,32 +49,34 @@ public class PatientJsonSerializer implements JsonSerializer<Patient> {
     private static final String SYSTEM_VALUE = "http://hl7.org/fhir/v2/0203";
     private static final String CODING_KEY = "coding";
     private static final String TYPE_KEY = "type";
-    private static final String SEPARATOR = "*";
 
     @Override
     public JsonElement serialize(Patient src, Type typeOfSource, JsonSerializationContext context) {
         JsonObject json = new JsonObject();
         JsonObject identifier = new JsonObject();
-        JsonObject assigner = new JsonObject();
-        JsonObject coding = new JsonObject();
-        JsonObject type = new JsonObject();
 
         Identifier id = src.getIdentifier();
-        String idValue = id.getSystem() + SEPARATOR + id.getValue();
-
-        coding.addProperty(SYSTEM_KEY, SYSTEM_VALUE);
-        coding.addProperty(CODE_KEY, CODE_VALUE);
-
-        type.add(CODING_KEY, coding);
-        assigner.addProperty(REFERENCE_KEY, ASSIGNER_VALUE);
+        String idValue = ResourceIdentifiers.patientValue(id);
 
         identifier.addProperty(VALUE_KEY, idValue);
-        identifier.add(TYPE_KEY, type);
-        identifier.add(ASSIGNER_KEY, assigner);
+        identifier.add(TYPE_KEY, createType());
+        identifier.add(ASSIGNER_KEY, createAssigner());
 
         json.addProperty(RESOURCE_TYPE_KEY, RESOURCE_TYPE);
         json.add(IDENTIFIER_KEY, identifier);
 
         return json;
     }
+
+    static JsonObject createType() {
+        return JsonFragments.wrap(CODING_KEY, JsonFragments.coding(SYSTEM_VALUE, CODE_VALUE, null));
+    }
+
+    static JsonObject createAssigner() {
+        JsonObject assigner = new JsonObject();
+
+        assigner.addProperty(REFERENCE_KEY, ASSIGNER_VALUE);
+
+        return assigner;
+    }
 }
@@ -0,0 +1,60 @@
+package org.nmdp.fhirsubmission.serialization;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import org.nmdp.hmlfhirconvertermodels.domain.fhir.Identifier;
+
+/**
+ * The identifiers the Patient and Specimen serializers write. Anything that has to match a
+ * submitted resource by identifier, such as a conditional create search, takes it from here so it
+ * stays in step with the JSON.
+ */
+public final class ResourceIdentifiers {
+
+    /**
+     * Patients are written without an {@code identifier.system}; the input system is folded into
+     * the value instead.
+     */
+    public static final String PATIENT_SYSTEM = null;
+    public static final String SPECIMEN_SYSTEM = "http://bethematch.org/center-code/001";
+
+    private static final String SEPARATOR = "*";
+
+    private ResourceIdentifiers() {
+    }
+
+    /**
+     * {@code identifier.value} of a Patient: {@code system*value} of the input identifier.
+     */
+    public static String patientValue(Identifier id) {
+        return id.getSystem() + SEPARATOR + id.getValue();
+    }
+
+    /**
+     * {@code identifier.value} of a Specimen, the input value as is; its system is always
+     * {@link #SPECIMEN_SYSTEM}.
+     */
+    public static String specimenValue(Identifier id) {
+        return id.getValue();
+    }
+}
@@ -52,19 +52,17 @@ public class SequenceJsonSerializer implements JsonSerializer<Sequence> {
     @Override
     public JsonElement serialize(Sequence src, Type typeOfSource, JsonSerializationContext context) {
         JsonObject sequence = new JsonObject();
-        JsonObject code = new JsonObject();
-        JsonObject coding = new JsonObject();
 
         sequence.addProperty(RESOURCE_KEY, RESOURCE_VALUE);
         sequence.addProperty(OBSERVED_SEQ_KEY, src.getObservedSeq());
         sequence.addProperty(COORDINATE_SYSTEM_KEY, COORDINATE_SYSTEM_VALUE);
-
-        coding.addProperty(SYSTEM_KEY, CODE_CODING_SYSTEM_VALUE);
-        coding.addProperty(CODE_KEY, CODE_CODING_CODE_VALUE);
-        coding.addProperty(DISPLAY_KEY, DISPLAY_VALUE);
-        code.add(CODING_KEY, coding);
-        sequence.add(CODE_KEY, code);
+        sequence.add(CODE_KEY, createCode());
 
         return sequence;
     }
+
+    static JsonObject createCode() {
+        return JsonFragments.wrap(CODING_KEY,
+                JsonFragments.coding(CODE_CODING_SYSTEM_VALUE, CODE_CODING_CODE_VALUE, DISPLAY_VALUE));
+    }
 }
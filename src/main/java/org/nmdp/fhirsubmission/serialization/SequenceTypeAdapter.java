@@ -0,0 +1,59 @@
+package org.nmdp.fhirsubmission.serialization;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import com.google.gson.stream.JsonWriter;
+
+import org.nmdp.hmlfhirconvertermodels.domain.fhir.Sequence;
+
+import java.io.IOException;
+
+/**
+ * Streaming counterpart of {@link SequenceJsonSerializer}: writes the same JSON directly to the
+ * writer without building an intermediate tree, so long {@code observedSeq} values are copied
+ * straight to the output.
+ */
+public class SequenceTypeAdapter extends StreamingJsonSerializer<Sequence> {
+
+    private static final String RESOURCE_KEY = "resourceType";
+    private static final String CODE_KEY = "code";
+    private static final String OBSERVED_SEQ_KEY = "observedSeq";
+    private static final String COORDINATE_SYSTEM_KEY = "coordinateSystem";
+    private static final String RESOURCE_VALUE = "Sequence";
+    private static final Integer COORDINATE_SYSTEM_VALUE = 0;
+    private static final String CODE_JSON = JsonFragments.encode(SequenceJsonSerializer.createCode());
+
+    public SequenceTypeAdapter() {
+        super(Sequence.class);
+    }
+
+    @Override
+    public void write(JsonWriter out, Sequence src) throws IOException {
+        out.beginObject();
+        out.name(RESOURCE_KEY).value(RESOURCE_VALUE);
+        out.name(OBSERVED_SEQ_KEY).value(src.getObservedSeq());
+        out.name(COORDINATE_SYSTEM_KEY).value(COORDINATE_SYSTEM_VALUE);
+        out.name(CODE_KEY).jsonValue(CODE_JSON);
+        out.endObject();
+    }
+}
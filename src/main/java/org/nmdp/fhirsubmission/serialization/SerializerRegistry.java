@@ -0,0 +1,181 @@
+package org.nmdp.fhirsubmission.serialization;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSerializer;
+import org.nmdp.hmlfhirconvertermodels.domain.fhir.Observation;
+import org.nmdp.hmlfhirconvertermodels.domain.fhir.Patient;
+import org.nmdp.hmlfhirconvertermodels.domain.fhir.Sequence;
+import org.nmdp.hmlfhirconvertermodels.domain.fhir.Specimen;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable set of the FHIR resource serializers and the Gson instances bound to them. Gson
+ * instances are expensive to build and safe to share, so they are created once here and used by
+ * every thread instead of being rebuilt per resource or per request.
+ * <p>
+ * Each resource has two converters: a tree converter backed by its {@code JsonSerializer}, for
+ * callers that edit the resulting tree, and a streaming converter backed by the equivalent
+ * {@link StreamingJsonSerializer}, which writes the same JSON without building the tree.
+ */
+public final class SerializerRegistry {
+
+    private static final SerializerRegistry INSTANCE = new SerializerRegistry();
+
+    private final PatientJsonSerializer patientSerializer;
+    private final SpecimenJsonSerializer specimenSerializer;
+    private final DiagnosticReportJsonSerializer diagnosticReportSerializer;
+    private final ObservationJsonSerializer observationSerializer;
+    private final SequenceJsonSerializer sequenceSerializer;
+
+    private final Gson defaultConverter;
+    private final Map<Class<?>, Gson> converters;
+    private final Map<Class<?>, Gson> streamingConverters;
+
+    private SerializerRegistry() {
+        Map<Class<?>, Gson> converterMap = new HashMap<>();
+        Map<Class<?>, Gson> streamingConverterMap = new HashMap<>();
+
+        this.patientSerializer = new PatientJsonSerializer();
+        this.specimenSerializer = new SpecimenJsonSerializer();
+        this.diagnosticReportSerializer = new DiagnosticReportJsonSerializer();
+        this.observationSerializer = new ObservationJsonSerializer();
+        this.sequenceSerializer = new SequenceJsonSerializer();
+        this.defaultConverter = new GsonBuilder().create();
+
+        converterMap.put(PatientJsonSerializer.class, createConverter(Patient.class, patientSerializer));
+        converterMap.put(SpecimenJsonSerializer.class, createConverter(Specimen.class, specimenSerializer));
+        converterMap.put(DiagnosticReportJsonSerializer.class, createConverter(Specimen.class, diagnosticReportSerializer));
+        converterMap.put(ObservationJsonSerializer.class, createConverter(Observation.class, observationSerializer));
+        converterMap.put(SequenceJsonSerializer.class, createConverter(Sequence.class, sequenceSerializer));
+        this.converters = Collections.unmodifiableMap(converterMap);
+
+        streamingConverterMap.put(PatientJsonSerializer.class, createConverter(new PatientTypeAdapter()));
+        streamingConverterMap.put(SpecimenJsonSerializer.class, createConverter(new SpecimenTypeAdapter()));
+        streamingConverterMap.put(DiagnosticReportJsonSerializer.class, createConverter(new DiagnosticReportTypeAdapter()));
+        streamingConverterMap.put(ObservationJsonSerializer.class, createConverter(new ObservationTypeAdapter()));
+        streamingConverterMap.put(SequenceJsonSerializer.class, createConverter(new SequenceTypeAdapter()));
+        this.streamingConverters = Collections.unmodifiableMap(streamingConverterMap);
+    }
+
+    public static SerializerRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    public PatientJsonSerializer getPatientSerializer() {
+        return patientSerializer;
+    }
+
+    public SpecimenJsonSerializer getSpecimenSerializer() {
+        return specimenSerializer;
+    }
+
+    public DiagnosticReportJsonSerializer getDiagnosticReportSerializer() {
+        return diagnosticReportSerializer;
+    }
+
+    public ObservationJsonSerializer getObservationSerializer() {
+        return observationSerializer;
+    }
+
+    public SequenceJsonSerializer getSequenceSerializer() {
+        return sequenceSerializer;
+    }
+
+    public Gson getDefaultConverter() {
+        return defaultConverter;
+    }
+
+    public Gson getPatientConverter() {
+        return converters.get(PatientJsonSerializer.class);
+    }
+
+    public Gson getSpecimenConverter() {
+        return converters.get(SpecimenJsonSerializer.class);
+    }
+
+    public Gson getDiagnosticReportConverter() {
+        return converters.get(DiagnosticReportJsonSerializer.class);
+    }
+
+    public Gson getObservationConverter() {
+        return converters.get(ObservationJsonSerializer.class);
+    }
+
+    public Gson getSequenceConverter() {
+        return converters.get(SequenceJsonSerializer.class);
+    }
+
+    /**
+     * Returns the shared converter for one of the registered serializers. Serializers that are not
+     * registered get a new, unshared converter so callers passing their own still work.
+     */
+    public <T> Gson getConverter(Class<T> clazz, JsonSerializer serializer) {
+        if (serializer == null) {
+            return defaultConverter;
+        }
+
+        Gson converter = converters.get(serializer.getClass());
+
+        if (converter == null) {
+            return createConverter(clazz, serializer);
+        }
+
+        return converter;
+    }
+
+    /**
+     * Returns the streaming converter that produces the same JSON as {@code serializer}. Falls back
+     * to {@link #getConverter(Class, JsonSerializer)} when no streaming adapter is registered.
+     */
+    public <T> Gson getStreamingConverter(Class<T> clazz, JsonSerializer serializer) {
+        if (serializer == null) {
+            return defaultConverter;
+        }
+
+        Gson converter = streamingConverters.get(serializer.getClass());
+
+        if (converter == null) {
+            return getConverter(clazz, serializer);
+        }
+
+        return converter;
+    }
+
+    private static Gson createConverter(Class<?> clazz, JsonSerializer serializer) {
+        GsonBuilder builder = new GsonBuilder();
+        builder.registerTypeAdapter(clazz, serializer);
+        return builder.create();
+    }
+
+    private static Gson createConverter(StreamingJsonSerializer<?> serializer) {
+        GsonBuilder builder = new GsonBuilder();
+        builder.registerTypeAdapterFactory(serializer);
+        return builder.create();
+    }
+}
@@ -57,20 +57,12 @@ public class SpecimenJsonSerializer implements JsonSerializer<Specimen> {
         JsonObject specimen = new JsonObject();
         JsonObject identifier = new JsonObject();
         JsonObject subject = new JsonObject();
-        JsonObject type = new JsonObject();
-        JsonObject coding = new JsonObject();
 
         Identifier id = src.getIdentifier();
         FhirSubmissionResponse response = (FhirSubmissionResponse) src.getSubject();
 
-        identifier.addProperty(VALUE_KEY, id.getValue());
-//        identifier.addProperty(SYSTEM_KEY, id.getSystem());
-        identifier.addProperty(SYSTEM_KEY, "http://bethematch.org/center-code/001");
-
-        coding.addProperty(SYSTEM_KEY, SYSTEM_VALUE);
-        coding.addProperty(CODE_KEY, CODE_VALUE);;
-        coding.addProperty(DISPLAY_KEY, DISPLAY_VALUE);
-        type.add(CODING_KEY, coding);
+        identifier.addProperty(VALUE_KEY, ResourceIdentifiers.specimenValue(id));
+        identifier.addProperty(SYSTEM_KEY, ResourceIdentifiers.SPECIMEN_SYSTEM);
 
         if (response != null) {
             subject.addProperty(REFERENCE_KEY, response.getUrl());
@@ -79,8 +71,12 @@ public class SpecimenJsonSerializer implements JsonSerializer<Specimen> {
         specimen.addProperty(RESOURCE_TYPE_KEY, RESOURCE_TYPE);
         specimen.add(IDENTIFIER_KEY, identifier);
         specimen.add(SUBJECT_KEY, subject);
-        specimen.add(TYPE_KEY, type);
+        specimen.add(TYPE_KEY, createType());
 
         return specimen;
     }
+
+    static JsonObject createType() {
+        return JsonFragments.wrap(CODING_KEY, JsonFragments.coding(SYSTEM_VALUE, CODE_VALUE, DISPLAY_VALUE));
+    }
 }
@@ -0,0 +1,75 @@
+package org.nmdp.fhirsubmission.serialization;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import com.google.gson.stream.JsonWriter;
+
+import org.nmdp.fhirsubmission.object.FhirSubmissionResponse;
+import org.nmdp.hmlfhirconvertermodels.domain.fhir.Identifier;
+import org.nmdp.hmlfhirconvertermodels.domain.fhir.Specimen;
+
+import java.io.IOException;
+
+/**
+ * Streaming counterpart of {@link SpecimenJsonSerializer}: writes the same JSON directly to the
+ * writer without building an intermediate tree.
+ */
+public class SpecimenTypeAdapter extends StreamingJsonSerializer<Specimen> {
+
+    private static final String RESOURCE_TYPE_KEY = "resourceType";
+    private static final String RESOURCE_TYPE = "Specimen";
+    private static final String VALUE_KEY = "value";
+    private static final String IDENTIFIER_KEY = "identifier";
+    private static final String SUBJECT_KEY = "subject";
+    private static final String REFERENCE_KEY = "reference";
+    private static final String SYSTEM_KEY = "system";
+    private static final String TYPE_KEY = "type";
+
+    private static final String TYPE_JSON = JsonFragments.encode(SpecimenJsonSerializer.createType());
+
+    public SpecimenTypeAdapter() {
+        super(Specimen.class);
+    }
+
+    @Override
+    public void write(JsonWriter out, Specimen src) throws IOException {
+        Identifier id = src.getIdentifier();
+        FhirSubmissionResponse response = (FhirSubmissionResponse) src.getSubject();
+
+        out.beginObject();
+        out.name(RESOURCE_TYPE_KEY).value(RESOURCE_TYPE);
+        out.name(IDENTIFIER_KEY).beginObject();
+        out.name(VALUE_KEY).value(ResourceIdentifiers.specimenValue(id));
+        out.name(SYSTEM_KEY).value(ResourceIdentifiers.SPECIMEN_SYSTEM);
+        out.endObject();
+        out.name(SUBJECT_KEY).beginObject();
+
+        if (response != null) {
+            out.name(REFERENCE_KEY).value(response.getUrl());
+        }
+
+        out.endObject();
+        out.name(TYPE_KEY).jsonValue(TYPE_JSON);
+        out.endObject();
+    }
+}
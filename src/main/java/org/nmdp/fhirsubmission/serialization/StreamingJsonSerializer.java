@@ -0,0 +1,76 @@
+package org.nmdp.fhirsubmission.serialization;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSerializer;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * Streaming counterpart of a {@link JsonSerializer}: writes a resource straight to a
+ * {@link JsonWriter}. Registered with {@code GsonBuilder.registerTypeAdapterFactory}, it behaves
+ * like a registered {@code JsonSerializer} does: {@code null} is written as JSON null and
+ * reading is left to the adapter Gson would otherwise use for the type.
+ */
+public abstract class StreamingJsonSerializer<T> implements TypeAdapterFactory {
+
+    private final Class<T> type;
+
+    protected StreamingJsonSerializer(Class<T> type) {
+        this.type = type;
+    }
+
+    public abstract void write(JsonWriter out, T src) throws IOException;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <R> TypeAdapter<R> create(Gson gson, TypeToken<R> token) {
+        if (!type.equals(token.getRawType())) {
+            return null;
+        }
+
+        TypeAdapter<R> delegate = gson.getDelegateAdapter(this, token);
+
+        return new TypeAdapter<R>() {
+            @Override
+            public void write(JsonWriter out, R value) throws IOException {
+                if (value == null) {
+                    out.nullValue();
+                } else {
+                    StreamingJsonSerializer.this.write(out, (T) value);
+                }
+            }
+
+            @Override
+            public R read(JsonReader in) throws IOException {
+                return delegate.read(in);
+            }
+        };
+    }
+}
@@ -0,0 +1,149 @@
+package org.nmdp.fhirsubmission.util;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongConsumer;
+
+/**
+ * Cuts a transaction bundle into consecutive bundles of at most {@code maxEntries} entries and
+ * roughly {@code maxBytes} of JSON. Entries keep their order, and {@link ResourceBundler} only
+ * ever references entries that come before the referencing one, so every {@code urn:uuid} in a
+ * chunk points either into the same chunk or into one sent earlier. An entry larger than
+ * {@code maxBytes} on its own gets a chunk to itself.
+ */
+public class BundleSplitter {
+
+    public static final int DEFAULT_MAX_ENTRIES = 500;
+    public static final long DEFAULT_MAX_BYTES = 4L * 1024 * 1024;
+
+    private static final String RESOURCE_TYPE_KEY = "resourceType";
+    private static final String BUNDLE_TYPE_KEY = "type";
+    private static final String ENTRY = "entry";
+    private static final int OBJECT_OVERHEAD = 2;
+    private static final int MEMBER_OVERHEAD = 4;
+    private static final int STRING_OVERHEAD = 2;
+
+    private final int maxEntries;
+    private final long maxBytes;
+
+    public BundleSplitter() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+    }
+
+    public BundleSplitter(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns {@code bundle} itself when it is within both limits, otherwise the chunks in the
+     * order they have to be sent. Entry trees are shared with {@code bundle}, not copied.
+     */
+    public List<JsonObject> split(JsonObject bundle) {
+        return split(bundle, bytes -> { });
+    }
+
+    /**
+     * Like {@link #split(JsonObject)}, also handing {@code size} the estimated encoded size of
+     * all the entries, which the split has to measure anyway.
+     */
+    public List<JsonObject> split(JsonObject bundle, LongConsumer size) {
+        JsonArray entries = bundle.getAsJsonArray(ENTRY);
+        List<JsonObject> chunks = new ArrayList<>();
+        JsonArray chunk = new JsonArray();
+        long chunkBytes = 0;
+        long totalBytes = 0;
+
+        for (JsonElement entry : entries) {
+            long entryBytes = estimateSize(entry);
+            totalBytes += entryBytes;
+
+            if (chunk.size() > 0 && (chunk.size() >= maxEntries || chunkBytes + entryBytes > maxBytes)) {
+                chunks.add(createBundle(bundle, chunk));
+                chunk = new JsonArray();
+                chunkBytes = 0;
+            }
+
+            chunk.add(entry);
+            chunkBytes += entryBytes;
+        }
+
+        if (chunks.isEmpty()) {
+            chunks.add(bundle);
+        } else {
+            chunks.add(createBundle(bundle, chunk));
+        }
+
+        size.accept(totalBytes);
+
+        return chunks;
+    }
+
+    private JsonObject createBundle(JsonObject template, JsonArray entries) {
+        JsonObject bundle = new JsonObject();
+
+        bundle.add(RESOURCE_TYPE_KEY, template.get(RESOURCE_TYPE_KEY));
+        bundle.add(BUNDLE_TYPE_KEY, template.get(BUNDLE_TYPE_KEY));
+        bundle.add(ENTRY, entries);
+
+        return bundle;
+    }
+
+    /**
+     * Approximate length of the element's compact JSON encoding: string contents plus quotes,
+     * punctuation and names. Escapes are not counted, which is close enough for a size bound.
+     */
+    static long estimateSize(JsonElement element) {
+        if (element == null || element.isJsonNull()) {
+            return 4;
+        }
+
+        if (element.isJsonPrimitive()) {
+            String value = element.getAsJsonPrimitive().getAsString();
+            return element.getAsJsonPrimitive().isString() ? value.length() + STRING_OVERHEAD : value.length();
+        }
+
+        long size = OBJECT_OVERHEAD;
+
+        if (element.isJsonArray()) {
+            for (JsonElement child : element.getAsJsonArray()) {
+                size += estimateSize(child) + 1;
+            }
+
+            return size;
+        }
+
+        for (Map.Entry<String, JsonElement> member : element.getAsJsonObject().entrySet()) {
+            size += member.getKey().length() + MEMBER_OVERHEAD + estimateSize(member.getValue());
+        }
+
+        return size;
+    }
+}
@@ -0,0 +1,115 @@
+package org.nmdp.fhirsubmission.util;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Caps the bytes of serialized transactions held between bundling and the server's answer. A
+ * bundled transaction is admitted, taking its size from the budget, before it is handed to the
+ * sender and gives the size back once its response has been processed. Admission never blocks:
+ * a transaction that does not fit waits as a pending future, so the bundling threads stay free
+ * while the budget is spent, and the number of such transactions is bounded by how many patients
+ * the caller lets be pending.
+ */
+public class ByteBudget {
+
+    private final long maxBytes;
+    private final Deque<Admission> waiting = new ArrayDeque<>();
+
+    private long used;
+
+    public ByteBudget(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Completes once {@code bytes} have been taken from the budget: at once if they fit and
+     * nothing is waiting, otherwise from the {@link #release(long)} that makes room, in the order
+     * the admissions were asked for. A transaction larger than the whole budget is let through
+     * once nothing else is held, so it cannot wait forever.
+     */
+    public CompletableFuture<Void> admit(long bytes) {
+        synchronized (this) {
+            if (waiting.isEmpty() && fits(bytes)) {
+                used += bytes;
+                return CompletableFuture.completedFuture(null);
+            }
+
+            Admission admission = new Admission(bytes);
+            waiting.add(admission);
+
+            return admission.admitted;
+        }
+    }
+
+    /**
+     * Gives {@code bytes} back and admits whatever now fits. The admitted futures are completed
+     * on the calling thread, outside the budget's lock.
+     */
+    public void release(long bytes) {
+        List<CompletableFuture<Void>> admitted = new ArrayList<>();
+
+        synchronized (this) {
+            used -= bytes;
+
+            while (!waiting.isEmpty() && fits(waiting.peek().bytes)) {
+                Admission admission = waiting.poll();
+                used += admission.bytes;
+                admitted.add(admission.admitted);
+            }
+        }
+
+        admitted.forEach(admission -> admission.complete(null));
+    }
+
+    public synchronized long getUsed() {
+        return used;
+    }
+
+    public synchronized int getWaiting() {
+        return waiting.size();
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    private boolean fits(long bytes) {
+        return used == 0 || used + bytes <= maxBytes;
+    }
+
+    private static class Admission {
+
+        private final long bytes;
+        private final CompletableFuture<Void> admitted = new CompletableFuture<>();
+
+        private Admission(long bytes) {
+            this.bytes = bytes;
+        }
+    }
+}
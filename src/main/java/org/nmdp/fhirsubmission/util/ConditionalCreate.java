@@ -0,0 +1,84 @@
+package org.nmdp.fhirsubmission.util;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import org.nmdp.fhirsubmission.serialization.ResourceIdentifiers;
+import org.nmdp.hmlfhirconvertermodels.domain.fhir.Identifier;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+
+/**
+ * Search conditions for FHIR conditional create. A resource posted with one of these in
+ * {@code ifNoneExist} (inside a transaction) or {@code If-None-Exist} (on a plain POST) is only
+ * written when no resource on the server matches; otherwise the server answers {@code 200 OK}
+ * with the existing resource.
+ */
+public class ConditionalCreate {
+
+    private static final String IDENTIFIER_PARAMETER = "identifier=";
+    private static final String TOKEN_SEPARATOR = "|";
+    private static final String ENCODING = "UTF-8";
+
+    /**
+     * Matches the Patient written for {@code identifier}; {@code null} when the identifier has no
+     * value to match on.
+     */
+    public static String forPatient(Identifier identifier) {
+        if (identifier == null || identifier.getValue() == null) {
+            return null;
+        }
+
+        return ifNoneExist(ResourceIdentifiers.PATIENT_SYSTEM, ResourceIdentifiers.patientValue(identifier));
+    }
+
+    /**
+     * Matches the Specimen written for {@code identifier}; {@code null} when the identifier has
+     * no value to match on.
+     */
+    public static String forSpecimen(Identifier identifier) {
+        if (identifier == null || identifier.getValue() == null) {
+            return null;
+        }
+
+        return ifNoneExist(ResourceIdentifiers.SPECIMEN_SYSTEM, ResourceIdentifiers.specimenValue(identifier));
+    }
+
+    /**
+     * {@code identifier=system|value}, with the system and value URL-encoded. A {@code null}
+     * system gives {@code identifier=|value}, which only matches identifiers without a system.
+     */
+    private static String ifNoneExist(String system, String value) {
+        String encodedSystem = system == null ? "" : encode(system);
+
+        return IDENTIFIER_PARAMETER + encodedSystem + TOKEN_SEPARATOR + encode(value);
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, ENCODING);
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -1,9 +1,9 @@
 package org.nmdp.fhirsubmission.util;
 
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.Date;
-import java.util.TimeZone;
 
 /**
  * fhir-submission
@@ -11,11 +11,18 @@ import java.util.TimeZone;
 
 public class DateParser {
 
+    /**
+     * Immutable and thread-safe, so one instance serves every caller.
+     */
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter
+            .ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'")
+            .withZone(ZoneOffset.UTC);
+
     public static String parseDate(Date date) {
-        TimeZone tz = TimeZone.getTimeZone("UTC");
-        DateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
-        df.setTimeZone(tz);
+        return format(date.toInstant());
+    }
 
-        return df.format(date);
+    public static String format(Instant instant) {
+        return FORMATTER.format(instant);
     }
 }
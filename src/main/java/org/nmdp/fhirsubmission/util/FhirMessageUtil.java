@@ -26,15 +26,24 @@ package org.nmdp.fhirsubmission.util;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
 import org.apache.http.HttpResponse;
 import org.apache.log4j.Logger;
 import org.nmdp.fhirsubmission.FhirSubmission;
 import org.nmdp.fhirsubmission.exceptions.FhirBundleSubmissionFailException;
+import org.nmdp.fhirsubmission.http.CircuitBreaker;
+import org.nmdp.fhirsubmission.http.HttpClientPool;
 import org.nmdp.fhirsubmission.http.Post;
+import org.nmdp.fhirsubmission.http.RetryMetrics;
+import org.nmdp.fhirsubmission.metrics.SubmissionMetrics;
 import org.nmdp.fhirsubmission.object.BundleSubmission;
 import org.nmdp.fhirsubmission.object.FhirSubmissionResponse;
 import org.nmdp.fhirsubmission.object.HmlSubmission;
+import org.nmdp.fhirsubmission.object.JournalEntry;
+import org.nmdp.fhirsubmission.object.PatientTransaction;
+import org.nmdp.fhirsubmission.object.SubmissionConfiguration;
+import org.nmdp.fhirsubmission.object.SubmissionContext;
+import org.nmdp.fhirsubmission.object.TransactionResponse;
 import org.nmdp.fhirsubmission.serialization.*;
 import org.nmdp.hmlfhirconvertermodels.domain.fhir.*;
 import org.nmdp.hmlfhirconvertermodels.domain.fhir.lists.Glstrings;
@@ -42,13 +51,25 @@ import org.nmdp.hmlfhirconvertermodels.domain.fhir.lists.Observations;
 import org.nmdp.hmlfhirmongo.models.DiagnosticReport;
 import org.nmdp.hmlfhirmongo.models.Status;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
-public class FhirMessageUtil {
+public class FhirMessageUtil implements Closeable {
+
+    public static final int DEFAULT_MAX_PENDING_PATIENTS = 256;
+    public static final long DEFAULT_MAX_PENDING_BYTES = 64L * 1024 * 1024;
 
-    private static final String URL = "http://fhirtest.b12x.org/baseDstu3/";
     private static final String QUERY_STRING = "?_format=json&_pretty=true&_summary=true";
 
     private static final String PATIENT = "Patient";
@@ -60,23 +81,208 @@ public class FhirMessageUtil {
     private static final String ID_SEPARATOR = "_";
     private static final String SPLIT_CHAR_GL_STRING = "\\*";
 
-    private static final PatientJsonSerializer PATIENT_SERIALIZER = new PatientJsonSerializer();
-    private static final SpecimenJsonSerializer SPECIMEN_SERIALIZER = new SpecimenJsonSerializer();
-    private static final DiagnosticReportJsonSerializer DIAGNOSTIC_REPORT_SERIALIZER = new DiagnosticReportJsonSerializer();
-    private static final ObservationJsonSerializer OBSERVATION_SERIALIZER = new ObservationJsonSerializer();
+    private static final SerializerRegistry SERIALIZERS = SerializerRegistry.getInstance();
+    private static final PatientJsonSerializer PATIENT_SERIALIZER = SERIALIZERS.getPatientSerializer();
+    private static final SpecimenJsonSerializer SPECIMEN_SERIALIZER = SERIALIZERS.getSpecimenSerializer();
+    private static final DiagnosticReportJsonSerializer DIAGNOSTIC_REPORT_SERIALIZER = SERIALIZERS.getDiagnosticReportSerializer();
+    private static final ObservationJsonSerializer OBSERVATION_SERIALIZER = SERIALIZERS.getObservationSerializer();
 
     private static final Logger LOG = Logger.getLogger(FhirMessageUtil.class);
 
+    private final String baseUrl;
+    private final ResourceBundler bundler;
+    private final HttpClientPool pool;
+    private final Post post;
+    private final TransactionBatcher batcher;
+    private final SubmissionJournal journal;
+    private final int maxPendingPatients;
+    private final ByteBudget pendingBytes;
+    private final SubmissionMetrics metrics;
+
+    public FhirMessageUtil() {
+        this(new SubmissionConfiguration());
+    }
+
+    public FhirMessageUtil(SubmissionConfiguration configuration) {
+        this.baseUrl = configuration.getBaseUrl();
+        this.metrics = configuration.getMetrics();
+        this.bundler = new ResourceBundler(configuration.getBundlerThreads(),
+                new BundleSplitter(configuration.getMaxBundleEntries(), configuration.getMaxBundleBytes()),
+                configuration.getReferenceIdAllocator(), metrics);
+        this.pool = new HttpClientPool(configuration.getMaxConnections(), configuration.getMaxConnectionsPerRoute(),
+                configuration.getKeepAliveMillis(), configuration.getIdleConnectionTimeoutMillis(),
+                configuration.getConnectTimeoutMillis(), configuration.getConnectionRequestTimeoutMillis(),
+                configuration.getSocketTimeoutMillis());
+        this.post = new Post(pool, configuration.getMaxInFlightBundles(), configuration.getCompressedEndpoints(),
+                configuration.getRetryPolicy(), new CircuitBreaker(configuration.getCircuitBreakerFailureThreshold(),
+                configuration.getCircuitBreakerOpenMillis()), metrics);
+        this.batcher = new TransactionBatcher(post, baseUrl + BUNDLE + QUERY_STRING, configuration.getMaxBundleEntries(),
+                configuration.getMaxBundleBytes(), configuration.getBatchLingerMillis());
+        this.journal = openJournal(configuration);
+        this.maxPendingPatients = configuration.getMaxPendingPatients();
+        this.pendingBytes = new ByteBudget(configuration.getMaxPendingBytes());
+    }
+
+    /**
+     * Submits the message's patients through the same bounded pipeline as
+     * {@link #submitPatients(Iterator, Consumer)}, so only the bundles in flight are held rather
+     * than the whole message serialized up front. The results are kept in patient order.
+     */
     public org.nmdp.hmlfhirmongo.models.FhirSubmission submit(FhirMessage fhirMessage) throws Exception {
         org.nmdp.hmlfhirmongo.models.FhirSubmission fhirSubmission = new org.nmdp.hmlfhirmongo.models.FhirSubmission();
-        List<HmlSubmission> submissions = new ArrayList<>();
-        final String bundleUrl = URL + BUNDLE + QUERY_STRING;
-        ResourceBundler bundler = new ResourceBundler();
-        JsonArray bundle = bundler.serialize(fhirMessage);
-        Post.postBatch(bundleUrl, bundle);
+        List<Patient> patients = fhirMessage.getPatients().getPatients();
+        HmlSubmission[] submissions = new HmlSubmission[patients.size()];
+        boolean failed = pipeline(patients.iterator(), (index, submission) -> submissions[index] = submission);
+
+        fhirSubmission.addSubmissionResult(Arrays.asList(submissions));
+        fhirSubmission.setComplete(!failed);
+        fhirSubmission.setError(failed);
+
         return  fhirSubmission;
     }
 
+    /**
+     * Resends, from the journal, every transaction that an earlier submission journaled but never
+     * saw acknowledged, starting with the first. Chunks the server acknowledged are not sent
+     * again; the remaining ones refer to the resources those created. Their {@code fullUrl}s are
+     * the ones originally sent and patients and specimens are conditional creates, so a chunk the
+     * server did accept just before the interruption is matched rather than duplicated for those
+     * two; its other resources are created again. A patient is journaled
+     * once it is bundled, so patients a submission had not yet reached are not in the journal and
+     * have to be submitted again. Only what the journal recovered when it was opened is resent,
+     * never a transaction this instance journaled. Without a journal there is nothing to resume.
+     */
+    public org.nmdp.hmlfhirmongo.models.FhirSubmission resume() throws Exception {
+        org.nmdp.hmlfhirmongo.models.FhirSubmission fhirSubmission = new org.nmdp.hmlfhirmongo.models.FhirSubmission();
+
+        if (journal == null) {
+            return fhirSubmission;
+        }
+
+        List<PatientTransaction> transactions = new ArrayList<>();
+        List<JournalEntry> entries = journal.getUnacknowledged();
+
+        for (JournalEntry entry : entries) {
+            transactions.add(decode(entry.getBundle()));
+        }
+
+        sendTransactions(transactions, entries, fhirSubmission);
+
+        return fhirSubmission;
+    }
+
+    /**
+     * Submits patients as {@code patients} yields them, without a whole message ever being held.
+     * A patient is pulled only while fewer than {@code maxPendingPatients} are being bundled or
+     * sent, so the heap needed does not grow with the number of patients. Each patient's result
+     * goes to {@code results} as soon as its transaction is answered, from the sending threads
+     * but one call at a time, in completion order; a patient that could not be submitted gets a
+     * result with only its id. Returns once every patient has been answered. The returned
+     * submission carries only the complete and error flags; the results are not kept.
+     */
+    public org.nmdp.hmlfhirmongo.models.FhirSubmission submitPatients(Iterator<Patient> patients,
+                                                                      Consumer<HmlSubmission> results) throws Exception {
+        org.nmdp.hmlfhirmongo.models.FhirSubmission fhirSubmission = new org.nmdp.hmlfhirmongo.models.FhirSubmission();
+        boolean failed = pipeline(patients, (index, submission) -> results.accept(submission));
+
+        fhirSubmission.setComplete(!failed);
+        fhirSubmission.setError(failed);
+
+        return fhirSubmission;
+    }
+
+    /**
+     * Bundles and sends patients as {@code patients} yields them, pulling the next one only while
+     * fewer than {@code maxPendingPatients} are pending. A bundled transaction then waits for room
+     * in the byte budget before it is journaled and sent, and gives the room back, along with its
+     * chunks, as soon as its response has been processed. {@code results} gets each patient's
+     * position and result, one call at a time, and the time from pulling it to its result is
+     * recorded as the {@code SUBMIT} stage. Returns whether any patient failed, once all have
+     * been answered and the journal is on disk.
+     */
+    private boolean pipeline(Iterator<Patient> patients, BiConsumer<Integer, HmlSubmission> results) throws Exception {
+        SubmissionContext context = new SubmissionContext();
+        Semaphore capacity = new Semaphore(maxPendingPatients);
+        AtomicBoolean failed = new AtomicBoolean();
+        Object resultLock = new Object();
+        int next = 0;
+
+        while (true) {
+            capacity.acquire();
+
+            if (!patients.hasNext()) {
+                capacity.release();
+                break;
+            }
+
+            Patient patient = patients.next();
+            int index = next++;
+            long start = System.nanoTime();
+
+            bundler.serializeTransaction(patient, context)
+                    .thenCompose(transaction -> submitTransaction(transaction, failed))
+                    .whenComplete((submission, ex) -> {
+                        try {
+                            if (ex != null) {
+                                LOG.error(ex);
+                                failed.set(true);
+                                submission = new HmlSubmission();
+                                submission.setPatientId(String.format("%s*%s", patient.getIdentifier().getSystem(),
+                                        patient.getIdentifier().getValue()));
+                            }
+
+                            synchronized (resultLock) {
+                                results.accept(index, submission);
+                            }
+                        } catch (RuntimeException consumerEx) {
+                            LOG.error(consumerEx);
+                        } finally {
+                            metrics.recordStage(SubmissionMetrics.Stage.SUBMIT, System.nanoTime() - start);
+                            capacity.release();
+                        }
+                    });
+        }
+
+        capacity.acquire(maxPendingPatients);
+        capacity.release(maxPendingPatients);
+
+        if (journal != null) {
+            journal.sync();
+        }
+
+        return failed.get();
+    }
+
+    /**
+     * Admits one bundled transaction to the byte budget, then journals and sends it. Admission
+     * does not block the bundling thread that finished the transaction; while the budget is spent
+     * the transaction waits until a response gives room back. Nothing is journaled until the
+     * budget admits the transaction, so a transaction that was never sent is not left pending in
+     * the journal. The size is given back, and the chunks dropped, once the response has been
+     * turned into the patient's result, including when journaling or sending failed to start.
+     */
+    private CompletableFuture<HmlSubmission> submitTransaction(PatientTransaction transaction, AtomicBoolean failed) {
+        long bytes = transaction.getBytes();
+
+        return pendingBytes.admit(bytes)
+                .thenCompose(admitted -> {
+                    Long journalId = journal == null ? null : journal.pending(encode(transaction));
+
+                    return send(transaction, journalId, null);
+                })
+                .handle((result, ex) -> {
+                    transaction.setChunks(null);
+                    pendingBytes.release(bytes);
+
+                    if (ex != null) {
+                        LOG.error(String.format("Patient %s failed", transaction.getPatientId()), ex);
+                        failed.set(true);
+                    }
+
+                    return transaction.toSubmission(ex == null ? result : null);
+                });
+    }
+
     public org.nmdp.hmlfhirmongo.models.FhirSubmission submitNonBatch(FhirMessage fhirMessage) throws  Exception {
         org.nmdp.hmlfhirmongo.models.FhirSubmission fhirSubmission = new org.nmdp.hmlfhirmongo.models.FhirSubmission();
         List<Patient> patients = getPrimaryResources(fhirMessage);
@@ -87,15 +293,137 @@ public class FhirMessageUtil {
         return fhirSubmission;
     }
 
+    public RetryMetrics getRetryMetrics() {
+        return post.getRetryMetrics();
+    }
+
+    @Override
+    public void close() {
+        bundler.close();
+        batcher.close();
+        post.close();
+
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException ex) {
+                LOG.error(ex);
+            }
+        }
+
+        pool.close();
+    }
+
+    /**
+     * Sends each patient's transaction, single-chunk ones through the batcher, waits for all of
+     * them and records one {@link HmlSubmission} per patient in {@code fhirSubmission}. The
+     * transaction-responses are stream-parsed as they arrive and only the location and status of
+     * each entry are kept. Each transaction is resumed from its journal entry, which is marked
+     * sent as it is handed over and acknowledged chunk by chunk; the journal is forced to disk
+     * before returning.
+     */
+    private void sendTransactions(List<PatientTransaction> transactions, List<JournalEntry> entries,
+                                  org.nmdp.hmlfhirmongo.models.FhirSubmission fhirSubmission) throws IOException {
+        List<CompletableFuture<TransactionResponse>> responses = new ArrayList<>();
+        List<HmlSubmission> submissions = new ArrayList<>();
+        boolean failed = false;
+
+        for (int i = 0; i < transactions.size(); i++) {
+            responses.add(send(transactions.get(i), entries.get(i).getId(), entries.get(i)));
+        }
+
+        for (int i = 0; i < responses.size(); i++) {
+            TransactionResponse response = null;
+
+            try {
+                response = responses.get(i).join();
+            } catch (CompletionException ex) {
+                LOG.error(String.format("Bundle %d failed", i), ex.getCause());
+                failed = true;
+            }
+
+            submissions.add(transactions.get(i).toSubmission(response));
+        }
+
+        fhirSubmission.addSubmissionResult(submissions);
+        fhirSubmission.setComplete(!failed);
+        fhirSubmission.setError(failed);
+
+        if (journal != null) {
+            journal.sync();
+        }
+    }
+
+    /**
+     * Hands one patient's transaction to the batcher, or posts its chunks in order when it did
+     * not fit one bundle. With a journal id it is marked sent now, each chunk is journaled as
+     * acknowledged as soon as the server answers it, and the transaction once all have been. A
+     * {@code resumed} entry's acknowledged chunks are not sent again.
+     */
+    private CompletableFuture<TransactionResponse> send(PatientTransaction transaction, Long journalId,
+                                                        JournalEntry resumed) {
+        final String bundleUrl = baseUrl + BUNDLE + QUERY_STRING;
+        List<JsonObject> chunks = transaction.getChunks();
+        Set<Integer> acknowledgedChunks = resumed == null ? Collections.emptySet() : resumed.getAcknowledgedChunks();
+        TransactionResponse acknowledged = resumed == null ? new TransactionResponse() : resumed.getAcknowledged();
+        CompletableFuture<TransactionResponse> response;
+
+        if (journalId != null) {
+            journal.sent(journalId);
+        }
+
+        if (chunks.size() == 1 && acknowledgedChunks.isEmpty()) {
+            response = batcher.submit(chunks.get(0));
+        } else {
+            response = post.asyncPostTransaction(bundleUrl, chunks, acknowledgedChunks, acknowledged,
+                    (chunk, results) -> {
+                        if (journalId != null) {
+                            journal.chunkAcknowledged(journalId, chunk, results);
+                        }
+                    });
+        }
+
+        if (journalId != null) {
+            response = response.thenApply(result -> {
+                journal.acknowledged(journalId);
+                return result;
+            });
+        }
+
+        return response;
+    }
+
+    private static SubmissionJournal openJournal(SubmissionConfiguration configuration) {
+        if (configuration.getJournalPath() == null) {
+            return null;
+        }
+
+        try {
+            return new SubmissionJournal(configuration.getJournalPath(), configuration.getJournalSyncMillis(),
+                    configuration.getJournalCompactBytes());
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static byte[] encode(PatientTransaction transaction) {
+        return SERIALIZERS.getDefaultConverter().toJson(transaction).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static PatientTransaction decode(byte[] bundle) {
+        return SERIALIZERS.getDefaultConverter().fromJson(new String(bundle, StandardCharsets.UTF_8), PatientTransaction.class);
+    }
+
     private HmlSubmission submitPatientTree(Patient patient, org.nmdp.hmlfhirmongo.models.FhirSubmission fhirSubmission) {
-        final String patientUrl = URL + PATIENT + QUERY_STRING;
+        final String patientUrl = baseUrl + PATIENT + QUERY_STRING;
         HmlSubmission submission = new HmlSubmission();
 
         submission.setPatientId(String.format("%s*%s", patient.getIdentifier().getSystem(), patient.getIdentifier().getValue()));
 
         try {
             FhirSubmissionResponse response = HttpResponseExtractor
-                    .parse(Post.post(patient, patientUrl, PATIENT_SERIALIZER, Patient.class));
+                    .parse(post.syncPost(patient, patientUrl, PATIENT_SERIALIZER, Patient.class,
+                            ConditionalCreate.forPatient(patient.getIdentifier())));
             submission.setPatientResource(response);
             List<Specimen> specimens = patient.getSpecimens().getSpecimens();
             specimens.forEach(specimen -> specimen.setSubject(response));
@@ -109,11 +437,12 @@ public class FhirMessageUtil {
 
     private void submitSpecimenTree(Specimen specimen, FhirSubmissionResponse patientResponse,
         org.nmdp.hmlfhirmongo.models.FhirSubmission fhirSubmission, HmlSubmission submission) {
-        final String specimenUrl = URL + SPECIMEN + QUERY_STRING;
+        final String specimenUrl = baseUrl + SPECIMEN + QUERY_STRING;
 
         try {
             FhirSubmissionResponse response = HttpResponseExtractor
-                    .parse(Post.post(specimen, specimenUrl, SPECIMEN_SERIALIZER, Specimen.class));
+                    .parse(post.syncPost(specimen, specimenUrl, SPECIMEN_SERIALIZER, Specimen.class,
+                            ConditionalCreate.forSpecimen(specimen.getIdentifier())));
             String specimenId = String.format("%s*%s", specimen.getIdentifier().getSystem(), specimen.getIdentifier().getValue());
             submission.addSpecimen(specimenId, response);
             specimen.setReference(response);
@@ -140,7 +469,7 @@ public class FhirMessageUtil {
     private Map<String, FhirSubmissionResponse> submitObservationTree(Specimen specimen, FhirSubmissionResponse specimenResponse,
         HmlSubmission submission) {
         Observations observations = specimen.getObservations();
-        final String observationUrl = URL + OBSERVATION + QUERY_STRING;
+        final String observationUrl = baseUrl + OBSERVATION + QUERY_STRING;
         Map<String, FhirSubmissionResponse> observationResponses = new HashMap<>();
 
 
@@ -151,7 +480,7 @@ public class FhirMessageUtil {
                 Glstring glstring = glstrings.getGlstrings().stream().findFirst().get();
                 String genotype = pullGlStringAllele(glstring.getValue());
                 FhirSubmissionResponse response = HttpResponseExtractor
-                        .parse(Post.post(observation, observationUrl, OBSERVATION_SERIALIZER, Observation.class));
+                        .parse(post.syncPost(observation, observationUrl, OBSERVATION_SERIALIZER, Observation.class));
 
                 observationResponses.put(genotype, response);
                 submission.addObservation(genotype, response);
@@ -164,11 +493,11 @@ public class FhirMessageUtil {
     }
 
     private void submitDiagnosticReportTree(Specimen specimen, org.nmdp.hmlfhirmongo.models.FhirSubmission fhirSubmission, HmlSubmission submission) {
-        final String diagnosticReportUrl = URL + DIAGNOSTIC_REPORT + QUERY_STRING;
+        final String diagnosticReportUrl = baseUrl + DIAGNOSTIC_REPORT + QUERY_STRING;
         String id = specimen.getIdentifier().getSystem() + ID_SEPARATOR + specimen.getIdentifier().getValue();
 
         try {
-            HttpResponse httpResponse = Post.post(specimen, diagnosticReportUrl, DIAGNOSTIC_REPORT_SERIALIZER, Specimen.class);
+            HttpResponse httpResponse = post.syncPost(specimen, diagnosticReportUrl, DIAGNOSTIC_REPORT_SERIALIZER, Specimen.class);
             FhirSubmissionResponse response = HttpResponseExtractor.parse(httpResponse);
             String patientId = String.format("%s*%s", specimen.getIdentifier().getSystem(), specimen.getIdentifier().getValue());
             submission.addDiagnosticReport(patientId, response);
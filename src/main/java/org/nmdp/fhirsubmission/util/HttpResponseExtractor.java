@@ -30,20 +30,35 @@ import org.nmdp.fhirsubmission.exceptions.FhirBundleSubmissionFailException;
 import org.nmdp.fhirsubmission.http.StatusCode;
 import org.nmdp.fhirsubmission.object.FhirSubmissionResponse;
 
-import java.util.Arrays;
-
 public class HttpResponseExtractor {
 
     private static final String LOCATION_HEADER = "Location";
+    private static final String CONTENT_LOCATION_HEADER = "Content-Location";
 
+    /**
+     * Accepts {@code 201 Created} and, for a conditional create that matched an existing
+     * resource, {@code 200 OK}; the response records which of the two it was. A missing
+     * response, a request that failed even after its retries, is reported like any other failure.
+     */
     public static FhirSubmissionResponse parse(HttpResponse httpResponse) throws FhirBundleSubmissionFailException {
-        if (httpResponse.getStatusLine().getStatusCode() != StatusCode.CREATED) {
-            throw new FhirBundleSubmissionFailException("Non-201 response");
+        if (httpResponse == null) {
+            throw new FhirBundleSubmissionFailException("No response");
+        }
+
+        int status = httpResponse.getStatusLine().getStatusCode();
+
+        if (status != StatusCode.CREATED && status != StatusCode.OK) {
+            throw new FhirBundleSubmissionFailException(String.format("Unexpected %d response", status));
+        }
+
+        Header header = httpResponse.getFirstHeader(LOCATION_HEADER);
+
+        if (header == null) {
+            header = httpResponse.getFirstHeader(CONTENT_LOCATION_HEADER);
         }
 
-        Header header = Arrays.asList(httpResponse.getHeaders(LOCATION_HEADER)).get(0);
-        String url = header.getValue();
+        String url = header == null ? null : header.getValue();
 
-        return new FhirSubmissionResponse(null, url);
+        return new FhirSubmissionResponse(null, url, status == StatusCode.CREATED);
     }
 }
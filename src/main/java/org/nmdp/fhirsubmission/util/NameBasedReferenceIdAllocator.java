@@ -0,0 +1,50 @@
+package org.nmdp.fhirsubmission.util;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Name-based (version 3) ids derived from the resource's name, which the bundler builds from the
+ * patient and specimen identifiers. Submitting the same message again yields the same
+ * {@code fullUrl}s. Resources without a name get a random id.
+ * <p>
+ * A patient that occurs twice, in one message or in two submissions running at once, gets the
+ * same ids both times; {@link TransactionBatcher} keeps such transactions in separate bundles.
+ */
+public class NameBasedReferenceIdAllocator implements ReferenceIdAllocator {
+
+    private static final String NAMESPACE = "fhir-submission:";
+
+    private final ReferenceIdAllocator fallback = new RandomReferenceIdAllocator();
+
+    @Override
+    public UUID allocate(String name) {
+        if (name == null) {
+            return fallback.allocate(null);
+        }
+
+        return UUID.nameUUIDFromBytes((NAMESPACE + name).getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,48 @@
+package org.nmdp.fhirsubmission.util;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Random version 4 ids from {@link ThreadLocalRandom}. Every thread draws from its own generator,
+ * so parallel bundling never contends on a shared lock. The ids are unique, not unpredictable,
+ * which is all a bundle-local reference needs.
+ */
+public class RandomReferenceIdAllocator implements ReferenceIdAllocator {
+
+    private static final long VERSION_MASK = 0xffffffffffff0fffL;
+    private static final long VERSION_4 = 0x0000000000004000L;
+    private static final long VARIANT_MASK = 0x3fffffffffffffffL;
+    private static final long VARIANT_IETF = 0x8000000000000000L;
+
+    @Override
+    public UUID allocate(String name) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long mostSigBits = (random.nextLong() & VERSION_MASK) | VERSION_4;
+        long leastSigBits = (random.nextLong() & VARIANT_MASK) | VARIANT_IETF;
+
+        return new UUID(mostSigBits, leastSigBits);
+    }
+}
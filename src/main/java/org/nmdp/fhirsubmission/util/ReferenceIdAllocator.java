@@ -0,0 +1,39 @@
+package org.nmdp.fhirsubmission.util;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import java.util.UUID;
+
+/**
+ * Source of the {@code urn:uuid} ids that link the entries of a transaction bundle.
+ * Implementations must be safe to call from every bundler thread at once.
+ */
+public interface ReferenceIdAllocator {
+
+    /**
+     * @param name identifies the resource within its patient's bundle, for example
+     *             {@code Patient/system*value}; allocators that do not derive ids from names
+     *             ignore it, and it may be {@code null}
+     */
+    UUID allocate(String name);
+}
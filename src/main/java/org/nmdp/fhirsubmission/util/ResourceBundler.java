@@ -27,19 +27,26 @@ package org.nmdp.fhirsubmission.util;
 import com.google.gson.*;
 
 import org.apache.log4j.Logger;
+import org.nmdp.fhirsubmission.metrics.NoOpSubmissionMetrics;
+import org.nmdp.fhirsubmission.metrics.SubmissionMetrics;
 import org.nmdp.fhirsubmission.object.BundleReference;
 import org.nmdp.fhirsubmission.object.BundleSubmission;
-import org.nmdp.fhirsubmission.serialization.*;
+import org.nmdp.fhirsubmission.object.PatientTransaction;
+import org.nmdp.fhirsubmission.object.SubmissionContext;
+import org.nmdp.fhirsubmission.serialization.SerializerRegistry;
 import org.nmdp.hmlfhirconvertermodels.domain.fhir.*;
+import org.nmdp.hmlfhirconvertermodels.domain.fhir.lists.Glstrings;
 import org.nmdp.hmlfhirconvertermodels.domain.fhir.lists.Observations;
 import org.nmdp.hmlfhirconvertermodels.domain.fhir.lists.Patients;
 import org.nmdp.hmlfhirconvertermodels.domain.fhir.lists.Sequences;
 import org.nmdp.hmlfhirconvertermodels.domain.fhir.lists.Specimens;
 
+import java.io.Closeable;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.Function;
 
-public class ResourceBundler {
+public class ResourceBundler implements Closeable {
 
     private static final String RESOURCE_TYPE_KEY = "resourceType";
     private static final String RESOURCE_TYPE_VALUE = "Bundle";
@@ -48,6 +55,7 @@ public class ResourceBundler {
     private static final String REQUEST_METHOD_KEY = "method";
     private static final String REQUEST_METOHD_VALUE = "POST";
     private static final String REQUEST_URL_KEY = "url";
+    private static final String IF_NONE_EXIST_KEY = "ifNoneExist";
     private static final String REQUEST_KEY = "request";
     private static final String STATUS_KEY = "status";
     private static final String STATUS_VALUE = "final";
@@ -76,93 +84,235 @@ public class ResourceBundler {
     private static final String HAS_MEMBER_VALUE = "has-member";
     private static final String TARGET_KEY = "target";
     private static final String VALUE_STRING_KEY = "valueString";
+    private static final String THREAD_NAME_PREFIX = "fhir-bundler-";
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+    private static final String NAME_SEPARATOR = "/";
+    private static final String IDENTIFIER_SEPARATOR = "*";
+    private static final String DUPLICATE_SEPARATOR = "#";
+    private static final String SEQUENCE_OBSERVATION_NAME = "Observation/sequences";
+    private static final String SPLIT_CHAR_GL_STRING = "\\*";
 
     private static final Logger LOG = Logger.getLogger(ResourceBundler.class);
 
+    private final ExecutorService executor;
+    private final SerializerRegistry registry;
+    private final BundleSplitter splitter;
+    private final ReferenceIdAllocator idAllocator;
+    private final SubmissionMetrics metrics;
+
+    public ResourceBundler() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public ResourceBundler(int threads) {
+        this(threads, new BundleSplitter(), new RandomReferenceIdAllocator());
+    }
+
+    /**
+     * Creates a bundler backed by a pool of up to {@code threads} workers. The pool is shared by
+     * every call to {@link #serialize(FhirMessage)} and lives until {@link #close()}; workers
+     * that sit idle in between end and are started again on demand.
+     */
+    public ResourceBundler(int threads, BundleSplitter splitter, ReferenceIdAllocator idAllocator) {
+        this(threads, splitter, idAllocator, new NoOpSubmissionMetrics());
+    }
+
+    /**
+     * Like {@link #ResourceBundler(int, BundleSplitter, ReferenceIdAllocator)}, timing both
+     * bundling stages of every patient into {@code metrics}.
+     */
+    public ResourceBundler(int threads, BundleSplitter splitter, ReferenceIdAllocator idAllocator,
+                           SubmissionMetrics metrics) {
+        this.registry = SerializerRegistry.getInstance();
+        this.splitter = splitter;
+        this.idAllocator = idAllocator;
+        this.metrics = metrics;
+        this.executor = WorkerThreads.fixed(THREAD_NAME_PREFIX, threads);
+    }
+
+    /**
+     * Builds one transaction bundle per patient. Patients are bundled in parallel, the returned
+     * array keeps the order of the patients in the message. Every resource of the message is
+     * stamped with the same submission time. A patient that cannot be bundled fails the call with
+     * a {@link CompletionException} carrying the cause.
+     */
     public JsonArray serialize(FhirMessage fhir) {
         JsonArray patientBundle = new JsonArray();
-        Patients patients = fhir.getPatients();
+        SubmissionContext context = new SubmissionContext();
 
-        for (Patient patient : patients.getPatients()) {
-            BundleSubmission bundle = new BundleSubmission();
-            String patientId = String.format("%s%s", GUID_PREFIX, UUID.randomUUID().toString());
-            ExecutorService executorService = Executors.newFixedThreadPool(6);
-            bundle.setPatient(serializeToJsonSingleton(
-                    getConverter(Patient.class, new PatientJsonSerializer()), patient, executorService));
-            Specimens specimens = patient.getSpecimens();
-
-            for (Specimen specimen : specimens.getSpecimens()) {
-                String specimenId = String.format("%s%s", GUID_PREFIX, UUID.randomUUID().toString());
-                bundle.addSpecimen(specimenId, serializeToJsonSingleton(getConverter(Specimen.class, new SpecimenJsonSerializer()),
-                        specimen, executorService));
-                bundle.addDiagnosticReport(specimenId, serializeToJsonSingleton(getConverter(Specimen.class, new DiagnosticReportJsonSerializer()),
-                        specimen, executorService));
-                Observations observations = specimen.getObservations();
-                Sequences sequences = new Sequences();
-                sequences.setSequences(new ArrayList<>());
-
-                for (Observation observation : observations.getObservations()) {
-                    Sequences seqs = observation.getSequences();
-                    sequences.getSequences().addAll(seqs.getSequences());
-                    bundle.addObservation(specimenId, serializeToJsonSingleton(getConverter(Observation.class, new ObservationJsonSerializer()),
-                            observation, executorService));
-                }
+        bundleEach(fhir, patient -> bundlePatient(patient, context)).forEach(patientBundle::add);
 
-                for (Sequence sequence : sequences.getSequences()) {
-                    JsonObject seq = serializeToJsonObject(getConverter(Sequence.class, new SequenceJsonSerializer()), sequence, executorService);
-                    JsonObject patientRef = new JsonObject();
-                    JsonObject specimenRef = new JsonObject();
+        return patientBundle;
+    }
 
-                    patientRef.addProperty(REFERENCE_KEY, patientId);
-                    specimenRef.addProperty(REFERENCE_KEY, specimenId);
-                    seq.add(SPECIMEN_KEY, specimenRef);
+    /**
+     * Bundles a single patient on the bundler's workers, for callers that receive patients one at
+     * a time rather than as a whole message.
+     */
+    public CompletableFuture<PatientTransaction> serializeTransaction(Patient patient, SubmissionContext context) {
+        return CompletableFuture.supplyAsync(() -> bundleTransaction(patient, context), executor);
+    }
 
-                    String sequenceJson = serializeToJsonSingleton(new GsonBuilder().create(), seq, executorService);
-                    bundle.addSequence(specimenId, sequenceJson);
-                }
-            }
+    private PatientTransaction bundleTransaction(Patient patient, SubmissionContext context) {
+        PatientTransaction transaction = new PatientTransaction();
+
+        transaction.setPatientId(identifierName(patient.getIdentifier()));
+        BundleSubmission bundle = metrics.time(SubmissionMetrics.Stage.SERIALIZE, () -> serializePatient(patient, context));
+        transaction.setChunks(metrics.time(SubmissionMetrics.Stage.COMBINE,
+                () -> splitter.split(combine(bundle, transaction), transaction::setBytes)));
+
+        return transaction;
+    }
+
+    /**
+     * Bundles every patient of the message, keeping their order. If any patient fails, or the
+     * caller is interrupted, the bundles still pending are cancelled and the whole call fails, so
+     * a returned list always has one bundle per patient at the patient's index.
+     */
+    private <T> List<T> bundleEach(FhirMessage fhir, Function<Patient, T> bundler) {
+        List<T> patientBundles = new ArrayList<>();
+        Patients patients = fhir.getPatients();
+        List<Future<T>> bundles = new ArrayList<>();
 
-            patientBundle.add(combine(bundle));
+        for (Patient patient : patients.getPatients()) {
+            bundles.add(executor.submit(() -> bundler.apply(patient)));
         }
 
-        return patientBundle;
+        for (Future<T> bundle : bundles) {
+            try {
+                patientBundles.add(bundle.get());
+            } catch (InterruptedException ex) {
+                bundles.forEach(pending -> pending.cancel(true));
+                Thread.currentThread().interrupt();
+                throw new CompletionException(ex);
+            } catch (ExecutionException ex) {
+                LOG.error(ex);
+                bundles.forEach(pending -> pending.cancel(true));
+                throw new CompletionException(ex.getCause());
+            }
+        }
+
+        return patientBundles;
     }
 
-    private JsonObject serializeToJsonObject(Gson gson, Object obj, ExecutorService executor) {
+    /**
+     * Stops accepting work and waits for bundles already in progress to finish.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+
         try {
-            Callable<JsonObject> callable = deserializeJson(obj, gson);
-            Future<JsonObject> json = executor.submit(callable);
-            return json.get();
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
         } catch (InterruptedException ex) {
-            LOG.error(ex);
-        } catch (ExecutionException ex) {
-            LOG.error(ex);
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
         }
+    }
+
+    private JsonObject bundlePatient(Patient patient, SubmissionContext context) {
+        BundleSubmission bundle = metrics.time(SubmissionMetrics.Stage.SERIALIZE, () -> serializePatient(patient, context));
 
-        return null;
+        return metrics.time(SubmissionMetrics.Stage.COMBINE, () -> combine(bundle));
     }
 
-    private String serializeToJsonSingleton(Gson gson, Object obj, ExecutorService executor) {
-        try {
-            Callable<String> callable = deserialize(obj, gson);
-            Future<String> json = executor.submit(callable);
-            return json.get();
-        } catch (InterruptedException ex) {
-            LOG.error(ex);
-        } catch (ExecutionException ex) {
-            LOG.error(ex);
+    public BundleSubmission serializePatient(Patient patient) {
+        return serializePatient(patient, new SubmissionContext());
+    }
+
+    /**
+     * Serializes every resource of one patient; the first of the two bundling stages. Sequences
+     * with the same {@code observedSeq}, within a specimen or across the patient's specimens,
+     * are serialized once and the same tree is listed under every specimen that has it; it keeps
+     * the specimen reference of the first one. Sequences without an {@code observedSeq} are
+     * never taken for one another and are each serialized.
+     */
+    public BundleSubmission serializePatient(Patient patient, SubmissionContext context) {
+        BundleSubmission bundle = new BundleSubmission();
+        String patientKey = PATIENT_RESOURCE + NAME_SEPARATOR + identifierName(patient.getIdentifier());
+        bundle.setPatientKey(patientKey);
+        bundle.setPatientCondition(ConditionalCreate.forPatient(patient.getIdentifier()));
+        bundle.setPatient(serializeToJsonObject(registry.getPatientConverter(), patient));
+        Specimens specimens = patient.getSpecimens();
+        Map<String, JsonObject> distinctSequences = new HashMap<>();
+        Set<String> specimenNames = new HashSet<>();
+
+        for (Specimen specimen : specimens.getSpecimens()) {
+            String specimenName = patientKey + NAME_SEPARATOR + SPECIMEN_RESOURCE + NAME_SEPARATOR + identifierName(specimen.getIdentifier());
+
+            for (int duplicate = 1; !specimenNames.add(specimenName); duplicate++) {
+                specimenName = specimenName + DUPLICATE_SEPARATOR + duplicate;
+            }
+
+            String specimenId = referenceId(specimenName);
+            bundle.addSpecimen(specimenId, serializeToJsonObject(registry.getSpecimenConverter(), specimen));
+            bundle.addSpecimenCondition(specimenId, ConditionalCreate.forSpecimen(specimen.getIdentifier()));
+            bundle.addSpecimenKey(specimenId, identifierName(specimen.getIdentifier()));
+            bundle.addDiagnosticReport(specimenId, registry.getDiagnosticReportSerializer().serialize(specimen, context));
+            Observations observations = specimen.getObservations();
+            Sequences sequences = new Sequences();
+            sequences.setSequences(new ArrayList<>());
+
+            for (Observation observation : observations.getObservations()) {
+                Sequences seqs = observation.getSequences();
+                sequences.getSequences().addAll(seqs.getSequences());
+                bundle.addObservation(specimenId, registry.getObservationSerializer().serialize(observation, context));
+                bundle.addObservationKey(specimenId, genotype(observation));
+            }
+
+            for (Sequence sequence : sequences.getSequences()) {
+                String observedSeq = sequence.getObservedSeq();
+                JsonObject seq = observedSeq == null ? null : distinctSequences.get(observedSeq);
+
+                if (seq == null) {
+                    JsonObject specimenRef = new JsonObject();
+
+                    seq = serializeToJsonObject(registry.getSequenceConverter(), sequence);
+                    specimenRef.addProperty(REFERENCE_KEY, specimenId);
+                    seq.add(SPECIMEN_KEY, specimenRef);
+
+                    if (observedSeq != null) {
+                        distinctSequences.put(observedSeq, seq);
+                    }
+                }
+
+                bundle.addSequence(specimenId, seq);
+            }
         }
 
-        return null;
+        return bundle;
+    }
+
+    /**
+     * Serializes straight into a tree; the resource is never encoded to a String before it is
+     * placed in the bundle.
+     */
+    private JsonObject serializeToJsonObject(Gson gson, Object obj) {
+        return gson.toJsonTree(obj).getAsJsonObject();
+    }
+
+    /**
+     * Assembles serialized resources into a transaction bundle and links their references; the
+     * second of the two bundling stages. The resource trees in {@code bundleSubmission} are
+     * modified in place.
+     */
+    public JsonObject combine(BundleSubmission bundleSubmission) {
+        return combine(bundleSubmission, new PatientTransaction());
     }
 
-    private JsonObject combine(BundleSubmission bundleSubmission) {
+    /**
+     * Like {@link #combine(BundleSubmission)}, recording in {@code transaction} which
+     * {@code fullUrl} each patient, specimen, observation and diagnostic report was given.
+     */
+    public JsonObject combine(BundleSubmission bundleSubmission, PatientTransaction transaction) {
         JsonObject bundle = new JsonObject();
         JsonArray entry = new JsonArray();
-        Gson gson = new GsonBuilder().create();
-        String patientId = String.format("%s%s", GUID_PREFIX, UUID.randomUUID().toString());
+        String patientId = referenceId(bundleSubmission.getPatientKey());
 
-        handleBundle(bundleSubmission, gson, patientId, entry);
+        transaction.setPatientFullUrl(patientId);
+        handleBundle(bundleSubmission, patientId, entry, transaction);
         bundle.addProperty(RESOURCE_TYPE_KEY, RESOURCE_TYPE_VALUE);
         bundle.addProperty(BUNDLE_TYPE_KEY, BUNDLE_TYPE_VALUE);
         bundle.add(ENTRY, entry);
@@ -170,8 +320,13 @@ public class ResourceBundler {
         return bundle;
     }
 
-    private void handleBundle(BundleSubmission bundle, Gson gson, String patientId, JsonArray entry) {
-        for (Map.Entry<String, String> specimen : bundle.getSpecimens().entrySet()) {
+    private void handleBundle(BundleSubmission bundle, String patientId, JsonArray entry, PatientTransaction transaction) {
+        Map<JsonObject, String> sequenceIds = new IdentityHashMap<>();
+
+        entry.add(createJsonObject(bundle.getPatient(), PATIENT_RESOURCE, patientId, new HashMap<>(),
+                bundle.getPatientCondition()));
+
+        for (Map.Entry<String, JsonObject> specimen : bundle.getSpecimens().entrySet()) {
             String specimenId = specimen.getKey();
             Map<String, BundleReference> specimenReferences = new HashMap<>();
             Map<String, BundleReference> diagnosticReportReferences = new HashMap<>();
@@ -185,35 +340,54 @@ public class ResourceBundler {
             sequenceReferences.put(SPECIMEN_KEY, new BundleReference(specimenId));
             observationReferences.put(SUBJECT_KEY, new BundleReference(patientId));
 
-            entry.add(createJsonObject(bundle.getPatient(), gson, PATIENT_RESOURCE, patientId, new HashMap<>()));
-            entry.add(createJsonObject(specimen.getValue(), gson, SPECIMEN_RESOURCE, specimenId, specimenReferences));
-            String diagnosticReportId = String.format("%s%s", GUID_PREFIX, UUID.randomUUID().toString());
-            String diagnosticReport = bundle.getDiangosticReports().getOrDefault(specimenId, null);
-            List<String> observations = bundle.getObservations().getOrDefault(specimenId, new ArrayList<>());
-            List<String> sequences = bundle.getSequences().getOrDefault(specimenId, new ArrayList<>());
-            Map<String, JsonObject> observationResults = new HashMap<>();
-            Map<String, JsonObject> sequenceResults = new HashMap<>();
-
-            for (String sequence : sequences) {
-                loopRelatedResources(entry, SEQUENCE_RESOURCE, sequenceReferences, sequence, gson, sequenceResults);
+            entry.add(createJsonObject(specimen.getValue(), SPECIMEN_RESOURCE, specimenId, specimenReferences,
+                    bundle.getSpecimenConditions().get(specimenId)));
+            String diagnosticReportId = referenceId(specimenId + NAME_SEPARATOR + DIAGNOSTIC_REPORT_RESOURCE);
+            JsonObject diagnosticReport = bundle.getDiangosticReports().getOrDefault(specimenId, null);
+            List<JsonObject> observations = bundle.getObservations().getOrDefault(specimenId, new ArrayList<>());
+            List<String> observationKeys = bundle.getObservationKeys().getOrDefault(specimenId, new ArrayList<>());
+            String specimenKey = bundle.getSpecimenKeys().get(specimenId);
+            List<JsonObject> sequences = bundle.getSequences().getOrDefault(specimenId, new ArrayList<>());
+            Map<String, JsonObject> observationResults = new LinkedHashMap<>();
+            Map<String, JsonObject> sequenceResults = new LinkedHashMap<>();
+
+            for (int i = 0; i < sequences.size(); i++) {
+                JsonObject sequence = sequences.get(i);
+                String sequenceId = sequenceIds.get(sequence);
+
+                if (sequenceId == null) {
+                    sequenceId = referenceId(specimenId + NAME_SEPARATOR + SEQUENCE_RESOURCE + NAME_SEPARATOR + i);
+                    loopRelatedResources(entry, SEQUENCE_RESOURCE, sequenceReferences, sequence, sequenceId);
+                    sequenceIds.put(sequence, sequenceId);
+                }
+
+                sequenceResults.put(sequenceId, sequence);
             }
 
-            String sequenceObservation = handleSequenceObservation(sequenceResults, patientId, gson);
-            String sequenceObservationId = loopRelatedResources(entry, OBSERVATION_RESOURCE, observationReferences, sequenceObservation, gson, null);
+            JsonObject sequenceObservation = handleSequenceObservation(sequenceResults, patientId);
+            String sequenceObservationId = referenceId(specimenId + NAME_SEPARATOR + SEQUENCE_OBSERVATION_NAME);
+            loopRelatedResources(entry, OBSERVATION_RESOURCE, observationReferences, sequenceObservation, sequenceObservationId);
+
+            for (int i = 0; i < observations.size(); i++) {
+                String observationId = referenceId(specimenId + NAME_SEPARATOR + OBSERVATION_RESOURCE + NAME_SEPARATOR + i);
+                loopObservations(entry, OBSERVATION_RESOURCE, observationReferences, observations.get(i), observationResults,
+                        sequenceObservationId, observationId);
 
-            for (String observation : observations) {
-                loopObservations(entry, OBSERVATION_RESOURCE, observationReferences, observation, gson, observationResults, sequenceObservationId);
+                if (i < observationKeys.size() && observationKeys.get(i) != null) {
+                    transaction.addObservation(observationId, observationKeys.get(i));
+                }
             }
 
-            diagnosticReport = handleDiagnosticReport(observationResults, diagnosticReport, gson);
-            entry.add(createJsonObject(diagnosticReport, gson, DIAGNOSTIC_REPORT_RESOURCE, diagnosticReportId, diagnosticReportReferences));
+            handleDiagnosticReport(observationResults, diagnosticReport);
+            entry.add(createJsonObject(diagnosticReport, DIAGNOSTIC_REPORT_RESOURCE, diagnosticReportId, diagnosticReportReferences));
+            transaction.addSpecimen(specimenId, specimenKey);
+            transaction.addDiagnosticReport(diagnosticReportId, specimenKey);
         }
     }
 
-    private void loopObservations(JsonArray entry, String resourceType, Map<String, BundleReference> references, String data,
-                                  Gson gson, Map<String, JsonObject> idMap, String sequenceObservationId) {
-        String id = String.format("%s%s", GUID_PREFIX, UUID.randomUUID().toString());
-        JsonObject json = createJsonObject(data, gson, resourceType, id, references);
+    private void loopObservations(JsonArray entry, String resourceType, Map<String, BundleReference> references, JsonObject data,
+                                  Map<String, JsonObject> idMap, String sequenceObservationId, String id) {
+        JsonObject json = createJsonObject(data, resourceType, id, references);
         JsonObject related = new JsonObject();
         JsonObject target = new JsonObject();
 
@@ -226,23 +400,37 @@ public class ResourceBundler {
         idMap.put(id, json);
     }
 
-    private String loopRelatedResources(JsonArray entry, String resourceType, Map<String, BundleReference> references, String data, Gson gson, Map<String, JsonObject> idMap) {
-        String id = String.format("%s%s", GUID_PREFIX, UUID.randomUUID().toString());
-        JsonObject json = createJsonObject(data, gson, resourceType, id, references);
-        entry.add(json);
+    private void loopRelatedResources(JsonArray entry, String resourceType, Map<String, BundleReference> references, JsonObject data, String id) {
+        entry.add(createJsonObject(data, resourceType, id, references));
+    }
+
+    private String referenceId(String name) {
+        return GUID_PREFIX + idAllocator.allocate(name);
+    }
+
+    private String identifierName(Identifier identifier) {
+        return identifier.getSystem() + IDENTIFIER_SEPARATOR + identifier.getValue();
+    }
+
+    /**
+     * The allele of the observation's first GL string, which is what the submission results
+     * file the observation under; {@code null} for an observation without one.
+     */
+    private String genotype(Observation observation) {
+        Glstrings glstrings = observation.getGlstrings();
 
-        if (idMap != null) {
-            idMap.put(id, json);
+        if (glstrings == null || glstrings.getGlstrings() == null || glstrings.getGlstrings().isEmpty()) {
+            return null;
         }
 
-        return id;
+        String value = glstrings.getGlstrings().get(0).getValue();
+
+        return value == null ? null : value.split(SPLIT_CHAR_GL_STRING)[0];
     }
 
-    private String handleSequenceObservation(Map<String, JsonObject> sequences, String patientId, Gson gson) {
+    private JsonObject handleSequenceObservation(Map<String, JsonObject> sequences, String patientId) {
         JsonObject observation = new JsonObject();
         JsonArray sequenceRefs = new JsonArray();
-        JsonObject code = new JsonObject();
-        JsonObject coding = new JsonObject();
         JsonObject subject = new JsonObject();
 
         for (Map.Entry<String, JsonObject> entry : sequences.entrySet()) {
@@ -257,27 +445,32 @@ public class ResourceBundler {
         }
 
         subject.addProperty(REFERENCE_KEY, patientId);
-        coding.addProperty(CODE_KEY, CODE_VALUE);
-        coding.addProperty(SYSTEM_KEY, SYSTEM_VALUE);
-        code.add(CODING_KEY, coding);
         observation.addProperty(RESOURCE_TYPE_KEY, OBSERVATION_RESOURCE);
         observation.addProperty(STATUS_KEY, STATUS_VALUE);
         observation.add(SUBJECT_KEY, subject);
         observation.add(RELATED_KEY, sequenceRefs);
-        observation.add(CODE_KEY, code);
+        observation.add(CODE_KEY, createSequenceObservationCode());
+
+        return observation;
+    }
+
+    private static JsonObject createSequenceObservationCode() {
+        JsonObject code = new JsonObject();
+        JsonObject coding = new JsonObject();
+
+        coding.addProperty(CODE_KEY, CODE_VALUE);
+        coding.addProperty(SYSTEM_KEY, SYSTEM_VALUE);
+        code.add(CODING_KEY, coding);
 
-        return gson.toJson(observation);
+        return code;
     }
 
-    private String handleDiagnosticReport(Map<String, JsonObject> observations, String diagnosticReport, Gson gson) {
-        JsonObject request = gson.fromJson(diagnosticReport, JsonObject.class);
+    private void handleDiagnosticReport(Map<String, JsonObject> observations, JsonObject diagnosticReport) {
         JsonArray result = new JsonArray();
 
-        request.remove(RESULT_KEY);
+        diagnosticReport.remove(RESULT_KEY);
         observations.entrySet().forEach(observation -> result.add(createResultObject(observation.getValue())));
-        request.add(RESULT_KEY, result);
-
-        return gson.toJson(request);
+        diagnosticReport.add(RESULT_KEY, result);
     }
 
     private JsonObject createResultObject(JsonObject observation) {
@@ -290,20 +483,33 @@ public class ResourceBundler {
         return obs;
     }
 
-    private JsonObject createJsonObject(String str, Gson gson, String resource, String id, Map<String, BundleReference> refs) {
+    private JsonObject createJsonObject(JsonObject incoming, String resource, String id, Map<String, BundleReference> refs) {
+        return createJsonObject(incoming, resource, id, refs, null);
+    }
+
+    /**
+     * With an {@code ifNoneExist} search the entry is a conditional create: the server reuses a
+     * resource that matches it rather than writing another, so resubmitting the same patients
+     * leaves no duplicates behind.
+     */
+    private JsonObject createJsonObject(JsonObject incoming, String resource, String id, Map<String, BundleReference> refs,
+                                        String ifNoneExist) {
         JsonObject json = new JsonObject();
         JsonObject request = new JsonObject();
 
-        if (str == null) {
+        if (incoming == null) {
             return json;
         }
 
-        JsonObject incoming = gson.fromJson(str, JsonObject.class);
         json.add(RESOURCE, incoming);
         json.addProperty(FULL_URL, id);
         request.addProperty(REQUEST_METHOD_KEY, REQUEST_METOHD_VALUE);
         request.addProperty(REQUEST_URL_KEY, resource);
 
+        if (ifNoneExist != null) {
+            request.addProperty(IF_NONE_EXIST_KEY, ifNoneExist);
+        }
+
         for (Map.Entry<String, BundleReference> ref : refs.entrySet()) {
             BundleReference bundleReference = ref.getValue();
             addReferenceToObject(bundleReference.getRefId(), ref.getKey(), json, bundleReference.getPropertyMap());
@@ -326,26 +532,4 @@ public class ResourceBundler {
         mutableJson.remove(propertyName);
         mutableJson.add(propertyName, referenceJson);
     }
-
-    private Callable<String> deserialize(Object obj, Gson gson) {
-        Callable<String> task = () -> {
-            return gson.toJson(obj);
-        };
-
-        return task;
-    }
-
-    private Callable<JsonObject> deserializeJson(Object obj, Gson gson) {
-        Callable<JsonObject> task = () -> {
-            return (JsonObject) gson.toJsonTree(obj);
-        };
-
-        return task;
-    }
-
-    private <T> Gson getConverter(Class<T> clazz, JsonSerializer serializer) {
-        GsonBuilder builder = new GsonBuilder();
-        builder.registerTypeAdapter(clazz, serializer);
-        return builder.create();
-    }
 }
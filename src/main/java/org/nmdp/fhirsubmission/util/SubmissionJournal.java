@@ -0,0 +1,468 @@
+package org.nmdp.fhirsubmission.util;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import com.google.gson.Gson;
+import org.apache.log4j.Logger;
+import org.nmdp.fhirsubmission.object.JournalEntry;
+import org.nmdp.fhirsubmission.object.TransactionResponse;
+import org.nmdp.fhirsubmission.serialization.SerializerRegistry;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, memory-mapped record of every patient transaction a submission sends: its encoded
+ * bytes when it is journaled, when it is handed to the sender, the server's results for each of
+ * its chunks as that chunk is acknowledged, and the end of the transaction once every chunk has
+ * been. Records are written straight into the mapped file, so they survive the JVM dying; a
+ * background thread forces them to disk every {@code syncMillis}, so a burst of appends costs one
+ * fsync rather than one each.
+ * <p>
+ * Each record is {@code length, crc32, type, id, body}. When the journal is opened the records
+ * are replayed up to the first torn or corrupt one, which is where appending resumes; the
+ * transactions left unacknowledged, with the chunks of them that were, are available from
+ * {@link #getUnacknowledged()}.
+ * <p>
+ * The records of finished transactions are dead weight. Once they add up to
+ * {@code compactBytes}, the background thread copies the records of the unfinished ones to a new
+ * file that replaces the journal, so the file stays about as large as the transactions in flight
+ * rather than the whole workload. The journal is compacted the same way when it is opened.
+ */
+public class SubmissionJournal implements Closeable {
+
+    public static final long DEFAULT_SYNC_MILLIS = 10;
+    public static final long DEFAULT_COMPACT_BYTES = 64L * 1024 * 1024;
+
+    private static final int SEGMENT_BYTES = 16 * 1024 * 1024;
+    private static final int HEADER_BYTES = Integer.BYTES + Integer.BYTES;
+    private static final int PREFIX_BYTES = Byte.BYTES + Long.BYTES;
+    private static final byte PENDING = 1;
+    private static final byte SENT = 2;
+    private static final byte ACKNOWLEDGED = 3;
+    private static final byte CHUNK_ACKNOWLEDGED = 4;
+    private static final byte[] EMPTY = new byte[0];
+    private static final String COMPACT_SUFFIX = ".compact";
+    private static final String THREAD_NAME = "fhir-journal";
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+    private static final Gson GSON = SerializerRegistry.getInstance().getDefaultConverter();
+
+    private static final Logger LOG = Logger.getLogger(SubmissionJournal.class);
+
+    private final Path path;
+    private final long compactBytes;
+    private final ScheduledExecutorService flusher;
+    private final Map<Long, JournalEntry> unacknowledged;
+    private final Map<Long, List<long[]>> liveRecords;
+    private final List<MappedByteBuffer> unforced;
+    private final Object forceLock = new Object();
+
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private boolean resized;
+    private boolean compactionScheduled;
+    private long position;
+    private long liveBytes;
+    private long nextId;
+    private volatile long durablePosition;
+
+    public SubmissionJournal(Path path) throws IOException {
+        this(path, DEFAULT_SYNC_MILLIS);
+    }
+
+    public SubmissionJournal(Path path, long syncMillis) throws IOException {
+        this(path, syncMillis, DEFAULT_COMPACT_BYTES);
+    }
+
+    /**
+     * Opens, or creates, the journal at {@code path}. With a {@code syncMillis} of zero nothing
+     * is forced to disk until {@link #sync()} or {@link #close()}.
+     *
+     * @param compactBytes records of finished transactions tolerated before the journal is
+     *                     compacted
+     */
+    public SubmissionJournal(Path path, long syncMillis, long compactBytes) throws IOException {
+        this.path = path;
+        this.compactBytes = compactBytes;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.unacknowledged = new LinkedHashMap<>();
+        this.liveRecords = new HashMap<>();
+        this.unforced = new ArrayList<>();
+
+        long end = recover();
+
+        channel.truncate(end);
+        this.position = end;
+        this.durablePosition = end;
+
+        if (end > liveBytes) {
+            compact();
+        } else {
+            map(end, 0);
+        }
+
+        this.flusher = WorkerThreads.scheduled(THREAD_NAME);
+
+        if (syncMillis > 0) {
+            flusher.scheduleWithFixedDelay(this::syncQuietly, syncMillis, syncMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Journals a transaction before it is sent and returns the id its later records refer to.
+     */
+    public long pending(byte[] bundle) {
+        long id;
+
+        synchronized (this) {
+            id = nextId++;
+        }
+
+        append(PENDING, id, bundle);
+
+        return id;
+    }
+
+    public void sent(long id) {
+        append(SENT, id, EMPTY);
+    }
+
+    /**
+     * Records that the server acknowledged chunk {@code chunk} of transaction {@code id} with
+     * {@code results}; a resumed transaction does not send that chunk again.
+     */
+    public void chunkAcknowledged(long id, int chunk, TransactionResponse results) {
+        byte[] json = GSON.toJson(results).getBytes(StandardCharsets.UTF_8);
+
+        append(CHUNK_ACKNOWLEDGED, id, ByteBuffer.allocate(Integer.BYTES + json.length).putInt(chunk).put(json).array());
+    }
+
+    /**
+     * Records that every chunk of transaction {@code id} was acknowledged. Its records are dropped
+     * at the next compaction.
+     */
+    public void acknowledged(long id) {
+        append(ACKNOWLEDGED, id, EMPTY);
+
+        synchronized (this) {
+            unacknowledged.remove(id);
+            release(id);
+
+            if (!compactionScheduled && position - liveBytes >= compactBytes) {
+                compactionScheduled = true;
+
+                try {
+                    flusher.execute(this::compactQuietly);
+                } catch (RejectedExecutionException ex) {
+                    compactionScheduled = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Transactions found pending or sent when the journal was opened and not acknowledged since,
+     * in the order they were journaled. Transactions journaled through this instance are never
+     * included, even while they are still unanswered or after they failed: they belong to a
+     * submission that is running or has reported its failures, and resending them here could
+     * send them twice.
+     */
+    public synchronized List<JournalEntry> getUnacknowledged() {
+        return new ArrayList<>(unacknowledged.values());
+    }
+
+    /**
+     * Forces every record appended so far to disk. Callers that arrive while a force is under
+     * way share the next one.
+     */
+    public void sync() throws IOException {
+        long target;
+
+        synchronized (this) {
+            target = position;
+        }
+
+        synchronized (forceLock) {
+            if (durablePosition >= target) {
+                return;
+            }
+
+            List<MappedByteBuffer> buffers;
+            boolean metadata;
+
+            synchronized (this) {
+                target = position;
+                buffers = new ArrayList<>(unforced);
+                buffers.add(segment);
+                metadata = resized;
+                unforced.clear();
+                resized = false;
+            }
+
+            for (MappedByteBuffer buffer : buffers) {
+                buffer.force();
+            }
+
+            if (metadata) {
+                channel.force(true);
+            }
+
+            durablePosition = target;
+        }
+    }
+
+    /**
+     * Stops the background sync, lets a compaction under way finish, forces what is left and
+     * closes the file. The flusher is not interrupted: an interrupt during
+     * {@code FileChannel.force} would close the channel.
+     */
+    @Override
+    public void close() throws IOException {
+        flusher.shutdown();
+
+        try {
+            flusher.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            sync();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (IOException ex) {
+            LOG.error(ex);
+        }
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (IOException ex) {
+            LOG.error(ex);
+        } finally {
+            synchronized (this) {
+                compactionScheduled = false;
+            }
+        }
+    }
+
+    /**
+     * Copies the records of unfinished transactions, in the order they were appended, to a new
+     * file, forces it and moves it over the journal. Appends and syncs wait until it is done. A
+     * crash before the move leaves the old journal in place; after it, the new one is complete.
+     */
+    private void compact() throws IOException {
+        synchronized (forceLock) {
+            synchronized (this) {
+                Path compacted = path.resolveSibling(path.getFileName() + COMPACT_SUFFIX);
+                List<long[]> records = new ArrayList<>();
+                long end = 0;
+
+                liveRecords.values().forEach(records::addAll);
+                records.sort(Comparator.comparingLong(record -> record[0]));
+
+                try (FileChannel target = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    for (long[] record : records) {
+                        for (long copied = 0; copied < record[1]; ) {
+                            copied += channel.transferTo(record[0] + copied, record[1] - copied, target);
+                        }
+
+                        record[0] = end;
+                        end += record[1];
+                    }
+
+                    target.force(true);
+                }
+
+                Files.move(compacted, path, StandardCopyOption.ATOMIC_MOVE);
+                channel.close();
+                channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                unforced.clear();
+                position = end;
+                liveBytes = end;
+                durablePosition = end;
+                map(end, 0);
+            }
+        }
+    }
+
+    private void append(byte type, long id, byte[] body) {
+        ByteBuffer prefix = ByteBuffer.allocate(PREFIX_BYTES).put(type).putLong(id);
+        CRC32 crc = new CRC32();
+
+        crc.update(prefix.array());
+        crc.update(body);
+
+        int length = PREFIX_BYTES + body.length;
+
+        synchronized (this) {
+            if (segment.remaining() < HEADER_BYTES + length) {
+                unforced.add(segment);
+
+                try {
+                    map(position, HEADER_BYTES + length);
+                } catch (IOException ex) {
+                    throw new IllegalStateException("Journal could not grow", ex);
+                }
+            }
+
+            segment.putInt(length);
+            segment.putInt((int) crc.getValue());
+            segment.put(prefix.array());
+            segment.put(body);
+
+            if (type != ACKNOWLEDGED) {
+                track(type, id, position, HEADER_BYTES + length);
+            }
+
+            position += HEADER_BYTES + length;
+        }
+    }
+
+    /**
+     * Counts a record of an unfinished transaction as live, to be kept by the next compaction.
+     * Records of a transaction that is no longer live are not tracked.
+     */
+    private void track(byte type, long id, long offset, long size) {
+        List<long[]> records = type == PENDING ? liveRecords.computeIfAbsent(id, key -> new ArrayList<>()) : liveRecords.get(id);
+
+        if (records != null) {
+            records.add(new long[] { offset, size });
+            liveBytes += size;
+        }
+    }
+
+    private void release(long id) {
+        List<long[]> records = liveRecords.remove(id);
+
+        if (records != null) {
+            records.forEach(record -> liveBytes -= record[1]);
+        }
+    }
+
+    /**
+     * Maps the next segment at {@code start}, extending the file; the zeros past the last record
+     * end the replay on the next open.
+     */
+    private void map(long start, int minimum) throws IOException {
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.max(SEGMENT_BYTES, minimum));
+        resized = true;
+    }
+
+    /**
+     * Replays the journal and returns the end of its last intact record.
+     */
+    private long recover() throws IOException {
+        long size = channel.size();
+        long end = 0;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(0))));
+
+        while (end + HEADER_BYTES <= size) {
+            int length = in.readInt();
+            int checksum = in.readInt();
+
+            if (length < PREFIX_BYTES || end + HEADER_BYTES + length > size) {
+                break;
+            }
+
+            byte[] record = new byte[length];
+            CRC32 crc = new CRC32();
+
+            in.readFully(record);
+            crc.update(record);
+
+            if ((int) crc.getValue() != checksum) {
+                LOG.error(String.format("Journal record at %d is corrupt, resuming from there", end));
+                break;
+            }
+
+            replay(ByteBuffer.wrap(record), end, HEADER_BYTES + length);
+            end += HEADER_BYTES + length;
+        }
+
+        return end;
+    }
+
+    private void replay(ByteBuffer record, long offset, long size) {
+        byte type = record.get();
+        long id = record.getLong();
+        JournalEntry entry = unacknowledged.get(id);
+
+        nextId = Math.max(nextId, id + 1);
+
+        switch (type) {
+            case PENDING:
+                byte[] bundle = new byte[record.remaining()];
+
+                record.get(bundle);
+                unacknowledged.put(id, new JournalEntry(id, JournalEntry.State.PENDING, bundle));
+                track(type, id, offset, size);
+                break;
+            case SENT:
+                if (entry != null) {
+                    entry.setState(JournalEntry.State.SENT);
+                    track(type, id, offset, size);
+                }
+                break;
+            case CHUNK_ACKNOWLEDGED:
+                if (entry != null) {
+                    int chunk = record.getInt();
+                    String json = StandardCharsets.UTF_8.decode(record).toString();
+
+                    entry.addAcknowledgedChunk(chunk, GSON.fromJson(json, TransactionResponse.class));
+                    track(type, id, offset, size);
+                }
+                break;
+            case ACKNOWLEDGED:
+                unacknowledged.remove(id);
+                release(id);
+                break;
+            default:
+                LOG.error(String.format("Unknown journal record type %d", type));
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package org.nmdp.fhirsubmission.util;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.nmdp.fhirsubmission.http.Post;
+import org.nmdp.fhirsubmission.object.FhirSubmissionResponse;
+import org.nmdp.fhirsubmission.object.TransactionResponse;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Packs small patient transactions, from any number of concurrent submissions, into shared
+ * transaction bundles. A batch is sent as soon as it reaches {@code maxEntries} entries or about
+ * {@code maxBytes} of JSON, or {@code lingerMillis} after its first patient arrived, whichever
+ * comes first. The transaction-response is then split back up so each caller only sees the
+ * locations of its own entries.
+ * <p>
+ * Entries keep their {@code urn:uuid} fullUrls. Those are not necessarily unique across
+ * patients: a {@link NameBasedReferenceIdAllocator} gives the same patient the same fullUrls each
+ * time it is bundled. A transaction whose fullUrls collide with one already queued therefore
+ * starts a new batch, so that no bundle holds a fullUrl twice and every response entry maps back
+ * to exactly one caller. A transaction is atomic, though: if the server rejects one patient,
+ * every patient in that batch fails with it.
+ */
+public class TransactionBatcher implements Closeable {
+
+    public static final long DEFAULT_LINGER_MILLIS = 5;
+
+    private static final String RESOURCE_TYPE_KEY = "resourceType";
+    private static final String RESOURCE_TYPE_VALUE = "Bundle";
+    private static final String BUNDLE_TYPE_KEY = "type";
+    private static final String BUNDLE_TYPE_VALUE = "transaction";
+    private static final String ENTRY = "entry";
+    private static final String FULL_URL = "fullUrl";
+    private static final String THREAD_NAME = "fhir-batcher";
+
+    private final Post post;
+    private final String url;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long lingerMillis;
+    private final ScheduledExecutorService scheduler;
+
+    private List<PendingTransaction> pending;
+    private Set<String> pendingFullUrls;
+    private int pendingEntries;
+    private long pendingBytes;
+    private ScheduledFuture<?> lingerTimer;
+
+    public TransactionBatcher(Post post, String url, int maxEntries, long maxBytes, long lingerMillis) {
+        this.post = post;
+        this.url = url;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.lingerMillis = lingerMillis;
+        this.pending = new ArrayList<>();
+        this.pendingFullUrls = new HashSet<>();
+        this.scheduler = WorkerThreads.scheduled(THREAD_NAME);
+    }
+
+    /**
+     * Queues one patient's transaction bundle for the next batch. The future completes with the
+     * results of that patient's entries once the batch has been acknowledged, or exceptionally if
+     * the batch could not be sent, including when the sender refused it outright.
+     */
+    public CompletableFuture<TransactionResponse> submit(JsonObject bundle) {
+        JsonArray entries = bundle.getAsJsonArray(ENTRY);
+        long bytes = BundleSplitter.estimateSize(entries);
+        PendingTransaction transaction = new PendingTransaction(entries);
+        List<String> fullUrls = fullUrls(entries);
+        List<PendingTransaction> previous = null;
+        List<PendingTransaction> full = null;
+
+        synchronized (this) {
+            if (!pending.isEmpty() && (pendingEntries + entries.size() > maxEntries || pendingBytes + bytes > maxBytes
+                    || !Collections.disjoint(pendingFullUrls, fullUrls))) {
+                previous = drain();
+            }
+
+            pending.add(transaction);
+            pendingFullUrls.addAll(fullUrls);
+            pendingEntries += entries.size();
+            pendingBytes += bytes;
+
+            if (pendingEntries >= maxEntries || pendingBytes >= maxBytes) {
+                full = drain();
+            } else if (lingerTimer == null) {
+                lingerTimer = scheduler.schedule(this::flush, lingerMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        send(previous);
+        send(full);
+
+        return transaction.future;
+    }
+
+    /**
+     * Sends whatever is queued right away.
+     */
+    public void flush() {
+        List<PendingTransaction> batch;
+
+        synchronized (this) {
+            batch = drain();
+        }
+
+        send(batch);
+    }
+
+    /**
+     * Sends the last partial batch and stops the linger timer.
+     */
+    @Override
+    public void close() {
+        flush();
+        scheduler.shutdownNow();
+    }
+
+    private List<PendingTransaction> drain() {
+        List<PendingTransaction> batch = pending;
+
+        if (lingerTimer != null) {
+            lingerTimer.cancel(false);
+            lingerTimer = null;
+        }
+
+        pending = new ArrayList<>();
+        pendingFullUrls = new HashSet<>();
+        pendingEntries = 0;
+        pendingBytes = 0;
+
+        return batch;
+    }
+
+    private void send(List<PendingTransaction> batch) {
+        if (batch == null || batch.isEmpty()) {
+            return;
+        }
+
+        JsonObject bundle = new JsonObject();
+        JsonArray entries = new JsonArray();
+
+        batch.forEach(transaction -> entries.addAll(transaction.entries));
+        bundle.addProperty(RESOURCE_TYPE_KEY, RESOURCE_TYPE_VALUE);
+        bundle.addProperty(BUNDLE_TYPE_KEY, BUNDLE_TYPE_VALUE);
+        bundle.add(ENTRY, entries);
+
+        CompletableFuture<TransactionResponse> response;
+
+        try {
+            response = post.asyncPostTransaction(url, Collections.singletonList(bundle));
+        } catch (RuntimeException ex) {
+            batch.forEach(transaction -> transaction.future.completeExceptionally(ex));
+            return;
+        }
+
+        response.whenComplete((result, ex) -> {
+            for (PendingTransaction transaction : batch) {
+                if (ex != null) {
+                    transaction.future.completeExceptionally(ex);
+                } else {
+                    transaction.future.complete(fanOut(transaction, result));
+                }
+            }
+        });
+    }
+
+    private static List<String> fullUrls(JsonArray entries) {
+        List<String> fullUrls = new ArrayList<>(entries.size());
+
+        for (JsonElement entry : entries) {
+            JsonElement fullUrl = entry.getAsJsonObject().get(FULL_URL);
+
+            if (fullUrl != null) {
+                fullUrls.add(fullUrl.getAsString());
+            }
+        }
+
+        return fullUrls;
+    }
+
+    private TransactionResponse fanOut(PendingTransaction transaction, TransactionResponse batchResponse) {
+        TransactionResponse response = new TransactionResponse();
+
+        for (JsonElement entry : transaction.entries) {
+            JsonElement fullUrl = entry.getAsJsonObject().get(FULL_URL);
+
+            FhirSubmissionResponse result = fullUrl == null ? null : batchResponse.getResult(fullUrl.getAsString());
+
+            if (result != null) {
+                response.addResult(fullUrl.getAsString(), result);
+            }
+        }
+
+        return response;
+    }
+
+    private static class PendingTransaction {
+        private final JsonArray entries;
+        private final CompletableFuture<TransactionResponse> future;
+
+        private PendingTransaction(JsonArray entries) {
+            this.entries = entries;
+            this.future = new CompletableFuture<>();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package org.nmdp.fhirsubmission.util;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * The executors behind the bundler, the sender, the batcher and the journal. Their threads are
+ * daemons and, core threads included, end after {@link #KEEP_ALIVE_SECONDS} without work, so a
+ * component that is never closed neither keeps the JVM alive nor holds idle threads.
+ */
+public final class WorkerThreads {
+
+    public static final long KEEP_ALIVE_SECONDS = 60;
+
+    private WorkerThreads() {
+    }
+
+    /**
+     * Up to {@code threads} workers named {@code namePrefix1}, {@code namePrefix2}, ... over an
+     * unbounded queue.
+     */
+    public static ExecutorService fixed(String namePrefix, int threads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), daemon(() -> namePrefix + threadCount.incrementAndGet()));
+
+        executor.allowCoreThreadTimeOut(true);
+
+        return executor;
+    }
+
+    /**
+     * A single scheduler thread named {@code name}. It is kept while a task is scheduled, even a
+     * delayed one, and only ends once nothing is left to run.
+     */
+    public static ScheduledExecutorService scheduled(String name) {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, daemon(() -> name));
+
+        executor.setKeepAliveTime(KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+        executor.allowCoreThreadTimeOut(true);
+        executor.setRemoveOnCancelPolicy(true);
+
+        return executor;
+    }
+
+    private static ThreadFactory daemon(Supplier<String> names) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, names.get());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
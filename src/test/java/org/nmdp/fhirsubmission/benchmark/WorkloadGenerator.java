@@ -0,0 +1,254 @@
+package org.nmdp.fhirsubmission.benchmark;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import org.nmdp.hmlfhirconvertermodels.domain.fhir.*;
+import org.nmdp.hmlfhirconvertermodels.domain.fhir.lists.*;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * Seeded, deterministic generator of synthetic FhirMessages: Patients, their Specimens, one
+ * Observation with a GL string per typed locus and Sequences with kilobase {@code observedSeq}s.
+ * <p>
+ * Every patient is derived only from the seed and its index, so {@link #patients()} produces the
+ * same patients as {@link #message()} while holding just one of them at a time, which lets load
+ * tests stream workloads far larger than the heap.
+ */
+public class WorkloadGenerator {
+
+    private static final String PATIENT_SYSTEM = "http://bethematch.org/patient";
+    private static final String SPECIMEN_SYSTEM = "http://bethematch.org/specimen";
+    private static final char[] BASES = { 'A', 'C', 'G', 'T' };
+    private static final String ALLELE_FORMAT = "%s*%02d:%02d:%02d";
+    private static final String AMBIGUITY_SEPARATOR = "/";
+    private static final String GENOTYPE_SEPARATOR = "+";
+    private static final long INDEX_MIX = 0x9E3779B97F4A7C15L;
+
+    private final WorkloadProfile profile;
+    private final List<String> loci;
+    private final int[] cumulativeWeights;
+    private final int weightedLoci;
+
+    public WorkloadGenerator(WorkloadProfile profile) {
+        this.profile = profile;
+        this.loci = new ArrayList<>(profile.getLociWeights().keySet());
+        this.cumulativeWeights = new int[loci.size()];
+
+        int total = 0;
+        int weighted = 0;
+
+        for (int i = 0; i < loci.size(); i++) {
+            int weight = profile.getLociWeights().get(loci.get(i));
+            total += weight;
+            cumulativeWeights[i] = total;
+            weighted += weight > 0 ? 1 : 0;
+        }
+
+        this.weightedLoci = weighted;
+    }
+
+    /**
+     * Builds the whole message in memory.
+     */
+    public FhirMessage message() {
+        FhirMessage message = new FhirMessage();
+        Patients patients = new Patients();
+        List<Patient> patientList = new ArrayList<>();
+
+        patients().forEachRemaining(patientList::add);
+        patients.setPatients(patientList);
+        message.setPatients(patients);
+
+        return message;
+    }
+
+    /**
+     * Lazily generates the patients of the workload, one per call to {@code next()}.
+     */
+    public Iterator<Patient> patients() {
+        return new Iterator<Patient>() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < profile.getPatientCount();
+            }
+
+            @Override
+            public Patient next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                return patient(index++);
+            }
+        };
+    }
+
+    /**
+     * Generates the patient at {@code index}; the same index always yields the same patient.
+     */
+    public Patient patient(int index) {
+        Random random = new Random(profile.getSeed() ^ (index * INDEX_MIX));
+        Patient patient = new Patient();
+        Specimens specimens = new Specimens();
+        List<Specimen> specimenList = new ArrayList<>();
+        int specimenCount = between(random, profile.getMinSpecimensPerPatient(), profile.getMaxSpecimensPerPatient());
+
+        patient.setIdentifier(identifier(PATIENT_SYSTEM, "P" + index));
+
+        for (int s = 0; s < specimenCount; s++) {
+            specimenList.add(specimen(random, "P" + index + "-S" + s));
+        }
+
+        specimens.setSpecimens(specimenList);
+        patient.setSpecimens(specimens);
+
+        return patient;
+    }
+
+    private Specimen specimen(Random random, String id) {
+        Specimen specimen = new Specimen();
+        Observations observations = new Observations();
+        List<Observation> observationList = new ArrayList<>();
+        int observationCount = between(random, profile.getMinObservationsPerSpecimen(), profile.getMaxObservationsPerSpecimen());
+
+        specimen.setIdentifier(identifier(SPECIMEN_SYSTEM, id));
+
+        for (String locus : drawLoci(random, observationCount)) {
+            observationList.add(observation(random, locus));
+        }
+
+        observations.setObservations(observationList);
+        specimen.setObservations(observations);
+
+        return specimen;
+    }
+
+    private Observation observation(Random random, String locus) {
+        Observation observation = new Observation();
+        Glstrings glstrings = new Glstrings();
+        Sequences sequences = new Sequences();
+        Glstring glstring = new Glstring();
+        List<Glstring> glstringList = new ArrayList<>();
+        List<Sequence> sequenceList = new ArrayList<>();
+
+        glstring.setValue(allele(random, locus) + GENOTYPE_SEPARATOR + allele(random, locus));
+        glstringList.add(glstring);
+        glstrings.setGlstrings(glstringList);
+
+        for (int i = 0; i < profile.getSequencesPerObservation(); i++) {
+            Sequence sequence = new Sequence();
+            sequence.setObservedSeq(bases(random, between(random, profile.getMinSequenceLength(), profile.getMaxSequenceLength())));
+            sequenceList.add(sequence);
+        }
+
+        sequences.setSequences(sequenceList);
+        observation.setGlstrings(glstrings);
+        observation.setSequences(sequences);
+
+        return observation;
+    }
+
+    /**
+     * One allele of a genotype with between 1 and {@code maxAmbiguity} alternatives.
+     */
+    private String allele(Random random, String locus) {
+        StringBuilder allele = new StringBuilder();
+        int group = random.nextInt(99) + 1;
+        int protein = random.nextInt(99) + 1;
+        int alternatives = between(random, 1, Math.max(1, profile.getMaxAmbiguity()));
+
+        for (int i = 0; i < alternatives; i++) {
+            if (i > 0) {
+                allele.append(AMBIGUITY_SEPARATOR);
+            }
+
+            allele.append(String.format(ALLELE_FORMAT, locus, group, protein, i + 1));
+        }
+
+        return allele.toString();
+    }
+
+    /**
+     * Draws {@code count} distinct loci weighted by the profile, in the profile's locus order.
+     */
+    private List<String> drawLoci(Random random, int count) {
+        Map<String, Boolean> drawn = new LinkedHashMap<>();
+        int limit = Math.min(count, weightedLoci);
+
+        for (String locus : loci) {
+            drawn.put(locus, false);
+        }
+
+        for (int picked = 0; picked < limit; ) {
+            int roll = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+            int i = 0;
+
+            while (cumulativeWeights[i] <= roll) {
+                i++;
+            }
+
+            if (!drawn.put(loci.get(i), true)) {
+                picked++;
+            }
+        }
+
+        List<String> selected = new ArrayList<>();
+        drawn.forEach((locus, picked) -> {
+            if (picked) {
+                selected.add(locus);
+            }
+        });
+
+        return selected;
+    }
+
+    private static String bases(Random random, int length) {
+        char[] sequence = new char[length];
+
+        for (int i = 0; i < length; i++) {
+            sequence[i] = BASES[random.nextInt(BASES.length)];
+        }
+
+        return new String(sequence);
+    }
+
+    private static int between(Random random, int min, int max) {
+        return max <= min ? min : min + random.nextInt(max - min + 1);
+    }
+
+    private static Identifier identifier(String system, String value) {
+        Identifier identifier = new Identifier();
+        identifier.setSystem(system);
+        identifier.setValue(value);
+        return identifier;
+    }
+}
@@ -0,0 +1,163 @@
+package org.nmdp.fhirsubmission.benchmark;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Shape of a synthetic workload: how many patients, how many specimens and typed loci each one
+ * has, how ambiguous the typings are and how long the sequences get. Ranges are inclusive.
+ */
+public class WorkloadProfile {
+
+    private long seed;
+    private int patientCount;
+    private int minSpecimensPerPatient;
+    private int maxSpecimensPerPatient;
+    private int minObservationsPerSpecimen;
+    private int maxObservationsPerSpecimen;
+    private int maxAmbiguity;
+    private int sequencesPerObservation;
+    private int minSequenceLength;
+    private int maxSequenceLength;
+    private Map<String, Integer> lociWeights;
+
+    public WorkloadProfile() {
+        this.seed = 20171011L;
+        this.patientCount = 100;
+        this.minSpecimensPerPatient = 1;
+        this.maxSpecimensPerPatient = 1;
+        this.minObservationsPerSpecimen = 2;
+        this.maxObservationsPerSpecimen = 6;
+        this.maxAmbiguity = 1;
+        this.sequencesPerObservation = 1;
+        this.minSequenceLength = 1000;
+        this.maxSequenceLength = 3500;
+        this.lociWeights = new LinkedHashMap<>();
+        this.lociWeights.put("HLA-A", 10);
+        this.lociWeights.put("HLA-B", 10);
+        this.lociWeights.put("HLA-C", 8);
+        this.lociWeights.put("HLA-DRB1", 8);
+        this.lociWeights.put("HLA-DQA1", 3);
+        this.lociWeights.put("HLA-DPB1", 3);
+        this.lociWeights.put("HLA-DPA1", 2);
+        this.lociWeights.put("HLA-DRB4", 1);
+        this.lociWeights.put("HLA-DRB5", 1);
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public int getPatientCount() {
+        return patientCount;
+    }
+
+    public void setPatientCount(int patientCount) {
+        this.patientCount = patientCount;
+    }
+
+    public int getMinSpecimensPerPatient() {
+        return minSpecimensPerPatient;
+    }
+
+    public void setMinSpecimensPerPatient(int minSpecimensPerPatient) {
+        this.minSpecimensPerPatient = minSpecimensPerPatient;
+    }
+
+    public int getMaxSpecimensPerPatient() {
+        return maxSpecimensPerPatient;
+    }
+
+    public void setMaxSpecimensPerPatient(int maxSpecimensPerPatient) {
+        this.maxSpecimensPerPatient = maxSpecimensPerPatient;
+    }
+
+    public int getMinObservationsPerSpecimen() {
+        return minObservationsPerSpecimen;
+    }
+
+    public void setMinObservationsPerSpecimen(int minObservationsPerSpecimen) {
+        this.minObservationsPerSpecimen = minObservationsPerSpecimen;
+    }
+
+    public int getMaxObservationsPerSpecimen() {
+        return maxObservationsPerSpecimen;
+    }
+
+    public void setMaxObservationsPerSpecimen(int maxObservationsPerSpecimen) {
+        this.maxObservationsPerSpecimen = maxObservationsPerSpecimen;
+    }
+
+    /**
+     * Largest number of alternative alleles ({@code /}-separated) per allele in a GL string; 1
+     * means unambiguous typings.
+     */
+    public int getMaxAmbiguity() {
+        return maxAmbiguity;
+    }
+
+    public void setMaxAmbiguity(int maxAmbiguity) {
+        this.maxAmbiguity = maxAmbiguity;
+    }
+
+    public int getSequencesPerObservation() {
+        return sequencesPerObservation;
+    }
+
+    public void setSequencesPerObservation(int sequencesPerObservation) {
+        this.sequencesPerObservation = sequencesPerObservation;
+    }
+
+    public int getMinSequenceLength() {
+        return minSequenceLength;
+    }
+
+    public void setMinSequenceLength(int minSequenceLength) {
+        this.minSequenceLength = minSequenceLength;
+    }
+
+    public int getMaxSequenceLength() {
+        return maxSequenceLength;
+    }
+
+    public void setMaxSequenceLength(int maxSequenceLength) {
+        this.maxSequenceLength = maxSequenceLength;
+    }
+
+    /**
+     * Relative frequency of each locus; a specimen types distinct loci drawn with these weights.
+     */
+    public Map<String, Integer> getLociWeights() {
+        return lociWeights;
+    }
+
+    public void setLociWeights(Map<String, Integer> lociWeights) {
+        this.lociWeights = lociWeights;
+    }
+}
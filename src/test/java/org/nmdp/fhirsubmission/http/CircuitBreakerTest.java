@@ -0,0 +1,118 @@
+package org.nmdp.fhirsubmission.http;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CircuitBreakerTest {
+
+    private static final long OPEN_MILLIS = 20;
+
+    @Test
+    public void opensAfterConsecutiveFailures() {
+        CircuitBreaker breaker = new CircuitBreaker(3, OPEN_MILLIS);
+
+        breaker.onFailure();
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0L, breaker.acquire());
+
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(1L, breaker.getTimesOpened());
+        assertTrue(breaker.acquire() > 0);
+    }
+
+    @Test
+    public void successResetsTheFailureCount() {
+        CircuitBreaker breaker = new CircuitBreaker(2, OPEN_MILLIS);
+
+        breaker.onFailure();
+        breaker.onSuccess();
+        breaker.onFailure();
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void letsOneProbeThroughOnceOpenPeriodIsOver() throws InterruptedException {
+        CircuitBreaker breaker = opened();
+
+        Thread.sleep(OPEN_MILLIS * 2);
+
+        assertEquals(0L, breaker.acquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue("only the probe may go while half-open", breaker.acquire() > 0);
+    }
+
+    @Test
+    public void successfulProbeCloses() throws InterruptedException {
+        CircuitBreaker breaker = opened();
+
+        Thread.sleep(OPEN_MILLIS * 2);
+        breaker.acquire();
+        breaker.onSuccess();
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0L, breaker.acquire());
+        assertEquals(0L, breaker.acquire());
+    }
+
+    @Test
+    public void failedProbeOpensAgain() throws InterruptedException {
+        CircuitBreaker breaker = opened();
+
+        Thread.sleep(OPEN_MILLIS * 2);
+        breaker.acquire();
+        breaker.onFailure();
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(2L, breaker.getTimesOpened());
+        assertTrue(breaker.acquire() > 0);
+    }
+
+    @Test
+    public void abandonedProbeHandsOverToNextCaller() throws InterruptedException {
+        CircuitBreaker breaker = opened();
+
+        Thread.sleep(OPEN_MILLIS * 2);
+        breaker.acquire();
+        breaker.onAbandoned();
+
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertEquals(0L, breaker.acquire());
+        assertTrue(breaker.acquire() > 0);
+    }
+
+    private static CircuitBreaker opened() {
+        CircuitBreaker breaker = new CircuitBreaker(1, OPEN_MILLIS);
+
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        return breaker;
+    }
+}
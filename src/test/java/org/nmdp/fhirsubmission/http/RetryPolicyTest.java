@@ -0,0 +1,101 @@
+package org.nmdp.fhirsubmission.http;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RetryPolicyTest {
+
+    private static final int SAMPLES = 1000;
+    private static final long NO_RETRY_AFTER = -1;
+
+    @Test
+    public void retriesThrottlingAndGatewayStatusesOnly() {
+        RetryPolicy policy = new RetryPolicy();
+
+        for (int status : new int[] { 429, 502, 503, 504 }) {
+            assertTrue(policy.isRetryable(status));
+        }
+
+        for (int status : new int[] { 200, 201, 400, 404, 409, 412, 500 }) {
+            assertFalse(policy.isRetryable(status));
+        }
+    }
+
+    @Test
+    public void retriesOnlyFailuresBeforeTheRequestWasSent() {
+        RetryPolicy policy = new RetryPolicy();
+
+        assertTrue(policy.isRetryable(new ConnectException()));
+        assertTrue(policy.isRetryable(new ConnectTimeoutException()));
+        assertTrue(policy.isRetryable(new ConnectionPoolTimeoutException()));
+        assertFalse(policy.isRetryable(new SocketTimeoutException()));
+        assertFalse(policy.isRetryable(new IOException("Connection reset")));
+    }
+
+    @Test
+    public void backoffStaysUnderItsCappedCeiling() {
+        RetryPolicy policy = new RetryPolicy();
+        policy.setBaseDelayMillis(100);
+        policy.setMaxDelayMillis(1000);
+
+        for (int i = 0; i < SAMPLES; i++) {
+            assertBetween(0, 100, policy.delayMillis(1, NO_RETRY_AFTER));
+            assertBetween(0, 400, policy.delayMillis(3, NO_RETRY_AFTER));
+            assertBetween(0, 1000, policy.delayMillis(10, NO_RETRY_AFTER));
+            assertBetween(0, 1000, policy.delayMillis(Integer.MAX_VALUE, NO_RETRY_AFTER));
+        }
+    }
+
+    @Test
+    public void retryAfterIsHonoredWithJitterAndCapped() {
+        RetryPolicy policy = new RetryPolicy();
+        policy.setBaseDelayMillis(100);
+        policy.setMaxRetryAfterMillis(5000);
+
+        for (int i = 0; i < SAMPLES; i++) {
+            assertBetween(2000, 2100, policy.delayMillis(1, 2000));
+            assertBetween(0, 100, policy.delayMillis(1, 0));
+            assertBetween(5000, 5100, policy.delayMillis(1, 60000));
+        }
+    }
+
+    @Test
+    public void noneSendsOnce() {
+        assertEquals(1, RetryPolicy.none().getMaxAttempts());
+    }
+
+    private static void assertBetween(long min, long max, long actual) {
+        assertTrue(String.format("%d not in [%d, %d]", actual, min, max), actual >= min && actual <= max);
+    }
+}
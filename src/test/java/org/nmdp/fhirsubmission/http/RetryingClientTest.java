@@ -0,0 +1,173 @@
+package org.nmdp.fhirsubmission.http;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * How the outcome of a single attempt is reported to the circuit breaker.
+ */
+public class RetryingClientTest {
+
+    private static final String URL = "http://fhir.example.org/Bundle";
+    private static final ResponseHandler<HttpResponse> AS_IS = response -> response;
+    private static final ResponseHandler<HttpResponse> REJECT_ERRORS = response -> {
+        int status = response.getStatusLine().getStatusCode();
+
+        if (status >= 300) {
+            throw new HttpResponseException(status, response.getStatusLine().getReasonPhrase());
+        }
+
+        return response;
+    };
+
+    @Test
+    public void serverErrorCountsAgainstTheBreaker() throws IOException {
+        CircuitBreaker breaker = new CircuitBreaker(1, 60000);
+
+        client(500, breaker).execute(() -> new HttpPost(URL), AS_IS);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void serverErrorRaisedByHandlerCountsAgainstTheBreaker() throws IOException {
+        CircuitBreaker breaker = new CircuitBreaker(1, 60000);
+
+        expectFailure(client(500, breaker), REJECT_ERRORS);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void clientErrorCountsAsServerHealthy() throws IOException {
+        CircuitBreaker breaker = new CircuitBreaker(2, 60000);
+
+        client(500, breaker).execute(() -> new HttpPost(URL), AS_IS);
+        expectFailure(client(412, breaker), REJECT_ERRORS);
+        client(500, breaker).execute(() -> new HttpPost(URL), AS_IS);
+
+        assertEquals("a 4xx must reset the run of failures", CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void clientSideFailureReleasesTheProbe() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(1, 1);
+
+        breaker.onFailure();
+        Thread.sleep(10);
+
+        try {
+            new RetryingClient(new FakeHttpClient(0), RetryPolicy.none(), breaker)
+                    .execute(() -> new HttpPost(URL), AS_IS);
+            fail("the request never reached the server");
+        } catch (IllegalStateException expected) {
+        }
+
+        assertEquals("a client-side failure must not close the breaker", CircuitBreaker.State.HALF_OPEN,
+                breaker.getState());
+        assertEquals(0L, breaker.acquire());
+    }
+
+    private static RetryingClient client(int status, CircuitBreaker breaker) {
+        return new RetryingClient(new FakeHttpClient(status), RetryPolicy.none(), breaker);
+    }
+
+    private static void expectFailure(RetryingClient client, ResponseHandler<HttpResponse> handler) throws IOException {
+        try {
+            client.execute(() -> new HttpPost(URL), handler);
+            fail("the handler should have rejected the response");
+        } catch (HttpResponseException expected) {
+        }
+    }
+
+    /**
+     * Answers every request with {@code status}, or, for a status of zero, fails before sending
+     * anything.
+     */
+    private static class FakeHttpClient extends CloseableHttpClient {
+
+        private final int status;
+
+        private FakeHttpClient(int status) {
+            this.status = status;
+        }
+
+        @Override
+        protected CloseableHttpResponse doExecute(HttpHost target, HttpRequest request, HttpContext context)
+                throws IOException, ClientProtocolException {
+            if (status == 0) {
+                throw new IllegalStateException("Request entity could not be written");
+            }
+
+            return new FakeResponse(status);
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public HttpParams getParams() {
+            return new BasicHttpParams();
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public ClientConnectionManager getConnectionManager() {
+            return null;
+        }
+    }
+
+    private static class FakeResponse extends BasicHttpResponse implements CloseableHttpResponse {
+
+        private FakeResponse(int status) {
+            super(HttpVersion.HTTP_1_1, status, "Status " + status);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
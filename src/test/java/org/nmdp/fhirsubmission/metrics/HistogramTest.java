@@ -0,0 +1,116 @@
+package org.nmdp.fhirsubmission.metrics;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HistogramTest {
+
+    private static final int SUB_BUCKETS = 16;
+    private static final int SAMPLES = 10_000;
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void smallValuesHaveABucketEach() {
+        for (long value = 0; value < SUB_BUCKETS; value++) {
+            assertEquals(value, Histogram.bucket(value));
+            assertEquals(value, Histogram.upperBound((int) value));
+        }
+    }
+
+    @Test
+    public void bucketsAreContiguous() {
+        int last = Histogram.bucket(Long.MAX_VALUE);
+
+        for (int bucket = 0; bucket < last; bucket++) {
+            long upper = Histogram.upperBound(bucket);
+
+            assertEquals(bucket, Histogram.bucket(upper));
+            assertEquals(bucket + 1, Histogram.bucket(upper + 1));
+        }
+
+        assertEquals(Long.MAX_VALUE, Histogram.upperBound(last));
+    }
+
+    @Test
+    public void upperBoundIsWithinASixteenthOfTheValue() {
+        Random random = new Random(42);
+
+        for (int i = 0; i < SAMPLES; i++) {
+            long value = random.nextLong() >>> (1 + random.nextInt(Long.SIZE - 1));
+            long upper = Histogram.upperBound(Histogram.bucket(value));
+
+            assertTrue(value + " above its bucket", value <= upper);
+            assertTrue(value + " bucketed too coarsely", upper - value <= value / SUB_BUCKETS);
+        }
+    }
+
+    @Test
+    public void snapshotReportsPercentilesInTheRequestedUnit() {
+        Histogram histogram = new Histogram();
+
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value * 1000);
+        }
+
+        HistogramSnapshot snapshot = histogram.snapshot(1000);
+
+        assertEquals(1000L, snapshot.getCount());
+        assertEquals(500.5, snapshot.getMean(), DELTA);
+        assertWithinBucket(500, snapshot.getP50());
+        assertWithinBucket(900, snapshot.getP90());
+        assertWithinBucket(990, snapshot.getP99());
+        assertEquals("a percentile never exceeds the maximum", 1000, snapshot.getP999(), DELTA);
+        assertEquals(1000, snapshot.getMax(), DELTA);
+    }
+
+    @Test
+    public void emptyAndResetHistogramsReportZero() {
+        Histogram histogram = new Histogram();
+
+        assertEquals(0L, histogram.snapshot(1).getCount());
+        assertEquals(0, histogram.snapshot(1).getP99(), DELTA);
+
+        histogram.record(-5);
+        assertEquals("negative values are recorded as zero", 0, histogram.snapshot(1).getMax(), DELTA);
+
+        histogram.record(12345);
+        histogram.reset();
+
+        HistogramSnapshot snapshot = histogram.snapshot(1);
+
+        assertEquals(0L, snapshot.getCount());
+        assertEquals(0, snapshot.getMean(), DELTA);
+        assertEquals(0, snapshot.getMax(), DELTA);
+    }
+
+    private static void assertWithinBucket(double expected, double actual) {
+        assertTrue(actual + " below " + expected, actual >= expected);
+        assertTrue(actual + " too far above " + expected, actual <= expected + expected / SUB_BUCKETS);
+    }
+}
@@ -0,0 +1,327 @@
+package org.nmdp.fhirsubmission.serialization;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
+
+import org.junit.Test;
+import org.nmdp.fhirsubmission.benchmark.WorkloadGenerator;
+import org.nmdp.fhirsubmission.benchmark.WorkloadProfile;
+import org.nmdp.fhirsubmission.object.FhirSubmissionResponse;
+import org.nmdp.fhirsubmission.object.SubmissionContext;
+import org.nmdp.hmlfhirconvertermodels.domain.fhir.*;
+import org.nmdp.hmlfhirconvertermodels.domain.fhir.lists.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Each streaming serializer must write exactly the JSON its tree serializer produces, byte for
+ * byte, since {@code Post} sends the former while the bundler and callers that edit the tree use
+ * the latter.
+ */
+public class SerializerEquivalenceTest {
+
+    private static final long[] SEEDS = { 1L, 42L, 20171011L };
+    private static final String AWKWARD = "<script>a=b&c='d'</script> \"quoted\" \\ \u2028 \u00e9 \t";
+
+    private final SerializerRegistry registry = SerializerRegistry.getInstance();
+    private final Gson gson = registry.getDefaultConverter();
+    private final SubmissionContext submission =
+            new SubmissionContext(Clock.fixed(Instant.parse("2017-10-11T14:03:00Z"), ZoneOffset.UTC));
+
+    private final PatientJsonSerializer patientSerializer = new PatientJsonSerializer();
+    private final SpecimenJsonSerializer specimenSerializer = new SpecimenJsonSerializer();
+    private final DiagnosticReportJsonSerializer diagnosticReportSerializer = new DiagnosticReportJsonSerializer();
+    private final ObservationJsonSerializer observationSerializer = new ObservationJsonSerializer();
+    private final SequenceJsonSerializer sequenceSerializer = new SequenceJsonSerializer();
+
+    private final PatientTypeAdapter patientAdapter = new PatientTypeAdapter();
+    private final SpecimenTypeAdapter specimenAdapter = new SpecimenTypeAdapter();
+    private final DiagnosticReportTypeAdapter diagnosticReportAdapter = new DiagnosticReportTypeAdapter();
+    private final ObservationTypeAdapter observationAdapter = new ObservationTypeAdapter();
+    private final SequenceTypeAdapter sequenceAdapter = new SequenceTypeAdapter();
+
+    @Test
+    public void generatedWorkloadsSerializeIdentically() throws IOException {
+        for (long seed : SEEDS) {
+            WorkloadProfile profile = new WorkloadProfile();
+            profile.setSeed(seed);
+            profile.setPatientCount(5);
+
+            Iterator<Patient> patients = new WorkloadGenerator(profile).patients();
+
+            while (patients.hasNext()) {
+                Patient patient = patients.next();
+                FhirSubmissionResponse patientResponse = response("Patient", patient.getIdentifier().getValue());
+
+                assertPatient(patient);
+
+                for (Specimen specimen : patient.getSpecimens().getSpecimens()) {
+                    specimen.setSubject(patientResponse);
+                    specimen.setReference(response("Specimen", specimen.getIdentifier().getValue()));
+
+                    for (Observation observation : specimen.getObservations().getObservations()) {
+                        observation.setReference(patientResponse);
+                        observation.setValue(response("Observation", specimen.getIdentifier().getValue()));
+
+                        assertObservation(observation);
+
+                        for (Sequence sequence : observation.getSequences().getSequences()) {
+                            assertSequence(sequence);
+                        }
+                    }
+
+                    assertSpecimen(specimen);
+                    assertDiagnosticReport(specimen);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void resolvedReferencesSerializeIdentically() throws IOException {
+        Patient patient = new Patient();
+        patient.setIdentifier(identifier("http://bethematch.org/patient", "P0"));
+        FhirSubmissionResponse patientResponse = response("Patient", "P0");
+
+        Sequence sequence = new Sequence();
+        sequence.setObservedSeq("ACGTTGCA");
+
+        Observation first = observation("HLA-A*01:01:01+HLA-A*02:01:01");
+        Observation second = observation("HLA-B*07:02:01/HLA-B*07:02:02", "HLA-B*08:01:01");
+        Specimen specimen = specimen("P0-S0", first, second);
+        specimen.setSubject(patientResponse);
+        specimen.setReference(response("Specimen", "P0-S0"));
+
+        for (Observation observation : specimen.getObservations().getObservations()) {
+            observation.setReference(patientResponse);
+            observation.setValue(response("Observation", "P0-S0"));
+            assertObservation(observation);
+        }
+
+        assertPatient(patient);
+        assertSequence(sequence);
+        assertSpecimen(specimen);
+        assertDiagnosticReport(specimen);
+    }
+
+    @Test
+    public void unresolvedReferencesSerializeIdentically() throws IOException {
+        Specimen specimen = specimen("S1", observation("HLA-A*01:01:01+HLA-A*02:01:01"));
+
+        assertSpecimen(specimen);
+        assertDiagnosticReport(specimen);
+        assertObservation(specimen.getObservations().getObservations().get(0));
+    }
+
+    @Test
+    public void nullValuesSerializeIdentically() throws IOException {
+        Patient patient = new Patient();
+        patient.setIdentifier(new Identifier());
+
+        assertPatient(patient);
+        assertSpecimen(specimen(null));
+        assertSequence(new Sequence());
+        assertObservation(observation(new String[] { null }));
+    }
+
+    @Test
+    public void emptyCollectionsSerializeIdentically() throws IOException {
+        assertDiagnosticReport(specimen("S1"));
+        assertDiagnosticReport(specimen("S1", observation()));
+        assertObservation(observation());
+    }
+
+    @Test
+    public void awkwardStringsAreEscapedIdentically() throws IOException {
+        Patient patient = new Patient();
+        patient.setIdentifier(identifier(AWKWARD, AWKWARD));
+
+        Sequence sequence = new Sequence();
+        sequence.setObservedSeq(AWKWARD);
+
+        Specimen specimen = specimen(AWKWARD, observation(AWKWARD, AWKWARD));
+        specimen.setSubject(response("Patient", AWKWARD));
+
+        assertPatient(patient);
+        assertSequence(sequence);
+        assertSpecimen(specimen);
+        assertDiagnosticReport(specimen);
+        assertObservation(specimen.getObservations().getObservations().get(0));
+    }
+
+    @Test
+    public void fragmentsAreEncodedLikeDefaultGson() {
+        JsonObject fragment = JsonFragments.coding(AWKWARD, AWKWARD, AWKWARD);
+
+        assertEquals(gson.toJson(fragment), JsonFragments.encode(fragment));
+        assertEquals(gson.toJson(PatientJsonSerializer.createType()),
+                JsonFragments.encode(PatientJsonSerializer.createType()));
+        assertEquals(gson.toJson(DiagnosticReportJsonSerializer.createPerformer()),
+                JsonFragments.encode(DiagnosticReportJsonSerializer.createPerformer()));
+    }
+
+    @Test
+    public void treesDoNotShareConstantSubtrees() throws IOException {
+        Patient patient = new Patient();
+        patient.setIdentifier(identifier("http://bethematch.org/patient", "P0"));
+        Specimen specimen = specimen("S1", observation("HLA-A*01:01:01+HLA-A*02:01:01"));
+
+        JsonObject edited = patientSerializer.serialize(patient, Patient.class, null).getAsJsonObject();
+        edited.getAsJsonObject("identifier").getAsJsonObject("assigner").addProperty("reference", "edited");
+        JsonObject report = diagnosticReportSerializer.serialize(specimen, submission);
+        report.getAsJsonObject("performer").remove("display");
+        JsonObject observation = observationSerializer.serialize(specimen.getObservations().getObservations().get(0),
+                submission);
+        observation.getAsJsonObject("code").remove("coding");
+
+        assertPatient(patient);
+        assertDiagnosticReport(specimen);
+        assertObservation(specimen.getObservations().getObservations().get(0));
+    }
+
+    @Test
+    public void streamingConvertersWriteNullAndStillRead() {
+        Gson converter = registry.getStreamingConverter(Sequence.class, registry.getSequenceSerializer());
+
+        assertEquals("null", converter.toJson(null, Sequence.class));
+        assertEquals("ACGT", converter.fromJson("{\"observedSeq\":\"ACGT\"}", Sequence.class).getObservedSeq());
+        assertNotNull(registry.getStreamingConverter(Patient.class, registry.getPatientSerializer())
+                .fromJson("{}", Patient.class));
+    }
+
+    @Test
+    public void streamingConvertersMatchTreeConverters() {
+        Patient patient = new Patient();
+        patient.setIdentifier(identifier("http://bethematch.org/patient", "P0"));
+        Specimen specimen = specimen("P0-S0", observation("HLA-C*01:02:01+HLA-C*03:04:01"));
+        Sequence sequence = new Sequence();
+        sequence.setObservedSeq("ACGT");
+
+        assertEquals(registry.getPatientConverter().toJson(patient),
+                registry.getStreamingConverter(Patient.class, registry.getPatientSerializer()).toJson(patient));
+        assertEquals(registry.getSpecimenConverter().toJson(specimen),
+                registry.getStreamingConverter(Specimen.class, registry.getSpecimenSerializer()).toJson(specimen));
+        assertEquals(registry.getSequenceConverter().toJson(sequence),
+                registry.getStreamingConverter(Sequence.class, registry.getSequenceSerializer()).toJson(sequence));
+    }
+
+    private void assertPatient(Patient patient) throws IOException {
+        JsonElement tree = patientSerializer.serialize(patient, Patient.class, null);
+        StringWriter json = new StringWriter();
+
+        patientAdapter.write(gson.newJsonWriter(json), patient);
+        assertEquals(gson.toJson(tree), json.toString());
+    }
+
+    private void assertSpecimen(Specimen specimen) throws IOException {
+        JsonElement tree = specimenSerializer.serialize(specimen, Specimen.class, null);
+        StringWriter json = new StringWriter();
+
+        specimenAdapter.write(gson.newJsonWriter(json), specimen);
+        assertEquals(gson.toJson(tree), json.toString());
+    }
+
+    private void assertSequence(Sequence sequence) throws IOException {
+        JsonElement tree = sequenceSerializer.serialize(sequence, Sequence.class, null);
+        StringWriter json = new StringWriter();
+
+        sequenceAdapter.write(gson.newJsonWriter(json), sequence);
+        assertEquals(gson.toJson(tree), json.toString());
+    }
+
+    private void assertObservation(Observation observation) throws IOException {
+        JsonElement tree = observationSerializer.serialize(observation, submission);
+        StringWriter json = new StringWriter();
+        JsonWriter out = gson.newJsonWriter(json);
+
+        observationAdapter.write(out, observation, submission);
+        assertEquals(gson.toJson(tree), json.toString());
+    }
+
+    private void assertDiagnosticReport(Specimen specimen) throws IOException {
+        JsonElement tree = diagnosticReportSerializer.serialize(specimen, submission);
+        StringWriter json = new StringWriter();
+        JsonWriter out = gson.newJsonWriter(json);
+
+        diagnosticReportAdapter.write(out, specimen, submission);
+        assertEquals(gson.toJson(tree), json.toString());
+    }
+
+    private static Specimen specimen(String id, Observation... observations) {
+        Specimen specimen = new Specimen();
+        Observations list = new Observations();
+        List<Observation> observationList = new ArrayList<>();
+
+        Collections.addAll(observationList, observations);
+        list.setObservations(observationList);
+        specimen.setIdentifier(identifier(null, id));
+        specimen.setObservations(list);
+
+        return specimen;
+    }
+
+    private static Observation observation(String... values) {
+        Observation observation = new Observation();
+        Glstrings glstrings = new Glstrings();
+        List<Glstring> glstringList = new ArrayList<>();
+
+        for (String value : values) {
+            Glstring glstring = new Glstring();
+            glstring.setValue(value);
+            glstringList.add(glstring);
+        }
+
+        glstrings.setGlstrings(glstringList);
+        observation.setGlstrings(glstrings);
+
+        return observation;
+    }
+
+    private static Identifier identifier(String system, String value) {
+        Identifier identifier = new Identifier();
+
+        identifier.setSystem(system);
+        identifier.setValue(value);
+
+        return identifier;
+    }
+
+    private static FhirSubmissionResponse response(String resourceType, String id) {
+        return new FhirSubmissionResponse(id, "http://fhir.example.org/" + resourceType + "/" + id);
+    }
+}
@@ -0,0 +1,233 @@
+package org.nmdp.fhirsubmission.util;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import org.junit.Test;
+import org.nmdp.fhirsubmission.benchmark.WorkloadGenerator;
+import org.nmdp.fhirsubmission.benchmark.WorkloadProfile;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BundleSplitterTest {
+
+    private static final String GUID_PREFIX = "urn:uuid:";
+
+    @Test
+    public void bundleWithinLimitsIsReturnedAsIs() {
+        JsonObject bundle = bundle(5, 10);
+        List<JsonObject> chunks = new BundleSplitter(5, Long.MAX_VALUE).split(bundle);
+
+        assertEquals(1, chunks.size());
+        assertTrue(chunks.get(0) == bundle);
+    }
+
+    @Test
+    public void entryLimitCutsConsecutiveChunks() {
+        assertChunkSizes(new BundleSplitter(3, Long.MAX_VALUE).split(bundle(10, 10)), 3, 3, 3, 1);
+        assertChunkSizes(new BundleSplitter(3, Long.MAX_VALUE).split(bundle(9, 10)), 3, 3, 3);
+        assertChunkSizes(new BundleSplitter(1, Long.MAX_VALUE).split(bundle(3, 10)), 1, 1, 1);
+    }
+
+    @Test
+    public void byteLimitCutsBeforeTheEntryThatWouldExceedIt() {
+        JsonObject bundle = bundle(5, 10);
+        long entryBytes = BundleSplitter.estimateSize(bundle.getAsJsonArray("entry").get(0));
+
+        assertChunkSizes(new BundleSplitter(100, entryBytes * 2).split(bundle), 2, 2, 1);
+        assertChunkSizes(new BundleSplitter(100, entryBytes * 2 - 1).split(bundle), 1, 1, 1, 1, 1);
+    }
+
+    @Test
+    public void oversizedEntryGetsAChunkToItself() {
+        JsonObject bundle = bundle(3, 10);
+        JsonArray entries = bundle.getAsJsonArray("entry");
+        long entryBytes = BundleSplitter.estimateSize(entries.get(0));
+
+        entries.get(1).getAsJsonObject().getAsJsonObject("resource").addProperty("text", repeat('x', 1000));
+
+        assertChunkSizes(new BundleSplitter(100, entryBytes * 2).split(bundle), 1, 1, 1);
+    }
+
+    @Test
+    public void chunksKeepEntryOrderAndBundleType() {
+        JsonObject bundle = bundle(7, 10);
+        List<JsonObject> chunks = new BundleSplitter(3, Long.MAX_VALUE).split(bundle);
+        List<String> fullUrls = new ArrayList<>();
+
+        for (JsonObject chunk : chunks) {
+            assertEquals("Bundle", chunk.get("resourceType").getAsString());
+            assertEquals("transaction", chunk.get("type").getAsString());
+            fullUrls.addAll(fullUrls(chunk));
+        }
+
+        assertEquals(fullUrls(bundle), fullUrls);
+    }
+
+    @Test
+    public void reportsTheEstimatedSizeOfAllEntries() {
+        JsonObject bundle = bundle(4, 10);
+        AtomicLong size = new AtomicLong();
+        long expected = 0;
+
+        for (JsonElement entry : bundle.getAsJsonArray("entry")) {
+            expected += BundleSplitter.estimateSize(entry);
+        }
+
+        new BundleSplitter(2, Long.MAX_VALUE).split(bundle, size::set);
+
+        assertEquals(expected, size.get());
+    }
+
+    /**
+     * Without escapes the estimate only overcounts the missing trailing comma of each of the
+     * entry's two objects.
+     */
+    @Test
+    public void estimateTracksCompactEncodingWithoutEscapes() {
+        JsonObject entry = bundle(1, 25).getAsJsonArray("entry").get(0).getAsJsonObject();
+
+        assertEquals(new Gson().toJson(entry).length() + 2, BundleSplitter.estimateSize(entry));
+    }
+
+    /**
+     * Every reference to another entry of the bundle must resolve to an entry of the same chunk
+     * or of an earlier one, since only those have been created by the time the chunk is sent.
+     * The fixed performer reference is not an entry of the bundle and is left alone.
+     */
+    @Test
+    public void referencesPointIntoTheSameOrAnEarlierChunk() {
+        WorkloadProfile profile = new WorkloadProfile();
+        profile.setMinSpecimensPerPatient(3);
+        profile.setMaxSpecimensPerPatient(3);
+        profile.setMinObservationsPerSpecimen(2);
+        profile.setMaxObservationsPerSpecimen(2);
+
+        try (ResourceBundler bundler = new ResourceBundler(1)) {
+            JsonObject bundle = bundler.combine(bundler.serializePatient(new WorkloadGenerator(profile).patient(0)));
+            Set<String> entries = new HashSet<>(fullUrls(bundle));
+            int checked = 0;
+
+            for (int maxEntries : new int[] { 1, 2, 3, 7 }) {
+                Set<String> created = new HashSet<>();
+                List<JsonObject> chunks = new BundleSplitter(maxEntries, Long.MAX_VALUE).split(bundle);
+
+                assertTrue(chunks.size() > 1);
+
+                for (JsonObject chunk : chunks) {
+                    created.addAll(fullUrls(chunk));
+
+                    for (String reference : references(chunk, new ArrayList<>())) {
+                        if (entries.contains(reference)) {
+                            assertTrue(reference + " is not created by the time it is sent", created.contains(reference));
+                            checked++;
+                        }
+                    }
+                }
+            }
+
+            assertTrue(checked > 0);
+        }
+    }
+
+    private static void assertChunkSizes(List<JsonObject> chunks, int... sizes) {
+        assertEquals(sizes.length, chunks.size());
+
+        for (int i = 0; i < sizes.length; i++) {
+            assertEquals(sizes[i], chunks.get(i).getAsJsonArray("entry").size());
+        }
+    }
+
+    private static JsonObject bundle(int entries, int textLength) {
+        JsonObject bundle = new JsonObject();
+        JsonArray entryArray = new JsonArray();
+
+        for (int i = 0; i < entries; i++) {
+            JsonObject entry = new JsonObject();
+            JsonObject resource = new JsonObject();
+
+            resource.addProperty("resourceType", "Basic");
+            resource.addProperty("text", repeat((char) ('a' + i % 26), textLength));
+            entry.addProperty("fullUrl", String.format("%s%08d", GUID_PREFIX, i));
+            entry.add("resource", resource);
+            entryArray.add(entry);
+        }
+
+        bundle.addProperty("resourceType", "Bundle");
+        bundle.addProperty("type", "transaction");
+        bundle.add("entry", entryArray);
+
+        return bundle;
+    }
+
+    private static List<String> fullUrls(JsonObject bundle) {
+        List<String> fullUrls = new ArrayList<>();
+
+        for (JsonElement entry : bundle.getAsJsonArray("entry")) {
+            fullUrls.add(entry.getAsJsonObject().get("fullUrl").getAsString());
+        }
+
+        return fullUrls;
+    }
+
+    private static List<String> references(JsonElement element, List<String> references) {
+        if (element.isJsonArray()) {
+            element.getAsJsonArray().forEach(child -> references(child, references));
+        } else if (element.isJsonObject()) {
+            for (Map.Entry<String, JsonElement> member : element.getAsJsonObject().entrySet()) {
+                JsonElement value = member.getValue();
+
+                if ("reference".equals(member.getKey()) && value.isJsonPrimitive()
+                        && value.getAsString().startsWith(GUID_PREFIX)) {
+                    references.add(value.getAsString());
+                } else {
+                    references(value, references);
+                }
+            }
+        }
+
+        return references;
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder builder = new StringBuilder(count);
+
+        for (int i = 0; i < count; i++) {
+            builder.append(c);
+        }
+
+        return builder.toString();
+    }
+}
@@ -0,0 +1,139 @@
+package org.nmdp.fhirsubmission.util;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import org.junit.Test;
+import org.nmdp.fhirsubmission.benchmark.WorkloadGenerator;
+import org.nmdp.fhirsubmission.benchmark.WorkloadProfile;
+import org.nmdp.fhirsubmission.object.PatientTransaction;
+import org.nmdp.fhirsubmission.object.SubmissionContext;
+import org.nmdp.hmlfhirconvertermodels.domain.fhir.Patient;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ByteBudgetTest {
+
+    private static final int PATIENTS = 20;
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Test
+    public void admitsAtOnceWhileItFits() {
+        ByteBudget budget = new ByteBudget(100);
+
+        assertTrue(budget.admit(60).isDone());
+        assertTrue(budget.admit(40).isDone());
+        assertEquals(100L, budget.getUsed());
+        assertEquals(0, budget.getWaiting());
+    }
+
+    @Test
+    public void waitsForReleaseAndAdmitsInOrder() {
+        ByteBudget budget = new ByteBudget(100);
+
+        budget.admit(80);
+        CompletableFuture<Void> large = budget.admit(50);
+        CompletableFuture<Void> small = budget.admit(10);
+
+        assertFalse(large.isDone());
+        assertFalse("a later admission must not overtake a waiting one", small.isDone());
+        assertEquals(2, budget.getWaiting());
+
+        budget.release(80);
+
+        assertTrue(large.isDone());
+        assertTrue(small.isDone());
+        assertEquals(60L, budget.getUsed());
+
+        budget.release(50);
+        budget.release(10);
+
+        assertEquals(0L, budget.getUsed());
+    }
+
+    @Test
+    public void admitsOversizedTransactionOnceEmpty() {
+        ByteBudget budget = new ByteBudget(100);
+
+        assertTrue(budget.admit(500).isDone());
+
+        CompletableFuture<Void> next = budget.admit(500);
+
+        assertFalse(next.isDone());
+
+        budget.release(500);
+
+        assertTrue(next.isDone());
+        assertEquals(500L, budget.getUsed());
+    }
+
+    /**
+     * Chains bundling into admission the way the submission pipeline does, with one bundling
+     * thread and a budget that a single transaction spends. Every patient must still be bundled
+     * while admissions wait, and releasing one transaction at a time must admit them all.
+     */
+    @Test
+    public void bundlingContinuesWhileBudgetIsSpent() throws Exception {
+        ByteBudget budget = new ByteBudget(1);
+        ResourceBundler bundler = new ResourceBundler(1);
+        SubmissionContext context = new SubmissionContext();
+        List<CompletableFuture<PatientTransaction>> bundled = new ArrayList<>();
+        List<CompletableFuture<PatientTransaction>> admitted = new ArrayList<>();
+
+        try {
+            WorkloadProfile profile = new WorkloadProfile();
+            profile.setPatientCount(PATIENTS);
+            Iterator<Patient> patients = new WorkloadGenerator(profile).patients();
+
+            while (patients.hasNext()) {
+                CompletableFuture<PatientTransaction> transaction = bundler.serializeTransaction(patients.next(), context);
+
+                bundled.add(transaction);
+                admitted.add(transaction.thenCompose(
+                        bundle -> budget.admit(bundle.getBytes()).thenApply(ignored -> bundle)));
+            }
+
+            for (CompletableFuture<PatientTransaction> transaction : bundled) {
+                transaction.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            }
+
+            assertEquals(PATIENTS - 1, budget.getWaiting());
+
+            for (CompletableFuture<PatientTransaction> transaction : admitted) {
+                budget.release(transaction.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).getBytes());
+            }
+
+            assertEquals(0L, budget.getUsed());
+            assertEquals(0, budget.getWaiting());
+        } finally {
+            bundler.close();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package org.nmdp.fhirsubmission.util;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.Test;
+import org.nmdp.fhirsubmission.serialization.SerializerRegistry;
+import org.nmdp.hmlfhirconvertermodels.domain.fhir.Identifier;
+import org.nmdp.hmlfhirconvertermodels.domain.fhir.Patient;
+import org.nmdp.hmlfhirconvertermodels.domain.fhir.Specimen;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * A conditional create only deduplicates if its search matches what was actually stored, so the
+ * conditions are checked against the identifier in the serialized resource rather than the input.
+ */
+public class ConditionalCreateTest {
+
+    private static final String[][] IDENTIFIERS = {
+            { "http://bethematch.org/patient", "P0" },
+            { "urn:oid:2.16.840.1.113883", "a b|c&d=e" },
+            { null, "P1" }
+    };
+
+    private final SerializerRegistry registry = SerializerRegistry.getInstance();
+    private final JsonParser parser = new JsonParser();
+
+    @Test
+    public void patientConditionMatchesSerializedIdentifier() throws UnsupportedEncodingException {
+        for (String[] id : IDENTIFIERS) {
+            Patient patient = new Patient();
+            patient.setIdentifier(identifier(id[0], id[1]));
+
+            String tree = registry.getPatientConverter().toJson(patient);
+            String stream = registry.getStreamingConverter(Patient.class, registry.getPatientSerializer())
+                    .toJson(patient);
+
+            assertEquals(search(tree), ConditionalCreate.forPatient(patient.getIdentifier()));
+            assertEquals(search(stream), ConditionalCreate.forPatient(patient.getIdentifier()));
+        }
+    }
+
+    @Test
+    public void specimenConditionMatchesSerializedIdentifier() throws UnsupportedEncodingException {
+        for (String[] id : IDENTIFIERS) {
+            Specimen specimen = new Specimen();
+            specimen.setIdentifier(identifier(id[0], id[1]));
+
+            String tree = registry.getSpecimenConverter().toJson(specimen);
+            String stream = registry.getStreamingConverter(Specimen.class, registry.getSpecimenSerializer())
+                    .toJson(specimen);
+
+            assertEquals(search(tree), ConditionalCreate.forSpecimen(specimen.getIdentifier()));
+            assertEquals(search(stream), ConditionalCreate.forSpecimen(specimen.getIdentifier()));
+        }
+    }
+
+    @Test
+    public void missingIdentifierHasNoCondition() {
+        assertNull(ConditionalCreate.forPatient(null));
+        assertNull(ConditionalCreate.forPatient(identifier("http://bethematch.org/patient", null)));
+        assertNull(ConditionalCreate.forSpecimen(null));
+        assertNull(ConditionalCreate.forSpecimen(identifier(null, null)));
+    }
+
+    /**
+     * The {@code identifier=system|value} search a FHIR server would evaluate against the
+     * identifier in {@code json}.
+     */
+    private String search(String json) throws UnsupportedEncodingException {
+        JsonObject identifier = parser.parse(json).getAsJsonObject().getAsJsonObject("identifier");
+        JsonElement system = identifier.get("system");
+        String value = identifier.get("value").getAsString();
+        String encodedSystem = system == null || system.isJsonNull()
+                ? "" : URLEncoder.encode(system.getAsString(), "UTF-8");
+
+        return "identifier=" + encodedSystem + "|" + URLEncoder.encode(value, "UTF-8");
+    }
+
+    private static Identifier identifier(String system, String value) {
+        Identifier identifier = new Identifier();
+
+        identifier.setSystem(system);
+        identifier.setValue(value);
+
+        return identifier;
+    }
+}
@@ -0,0 +1,93 @@
+package org.nmdp.fhirsubmission.util;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Test;
+import org.nmdp.fhirsubmission.exceptions.FhirBundleSubmissionFailException;
+import org.nmdp.fhirsubmission.object.FhirSubmissionResponse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HttpResponseExtractorTest {
+
+    private static final String LOCATION = "http://fhir.example.org/Patient/1/_history/1";
+    private static final String CONTENT_LOCATION = "http://fhir.example.org/Patient/1";
+
+    @Test
+    public void createdReadsLocation() throws FhirBundleSubmissionFailException {
+        HttpResponse response = response(201);
+        response.addHeader("Location", LOCATION);
+        response.addHeader("Content-Location", CONTENT_LOCATION);
+
+        FhirSubmissionResponse result = HttpResponseExtractor.parse(response);
+
+        assertEquals(LOCATION, result.getUrl());
+        assertTrue(result.isCreated());
+    }
+
+    @Test
+    public void matchedConditionalCreateIsNotCreated() throws FhirBundleSubmissionFailException {
+        HttpResponse response = response(200);
+        response.addHeader("Location", LOCATION);
+
+        FhirSubmissionResponse result = HttpResponseExtractor.parse(response);
+
+        assertEquals(LOCATION, result.getUrl());
+        assertFalse(result.isCreated());
+    }
+
+    @Test
+    public void fallsBackToContentLocation() throws FhirBundleSubmissionFailException {
+        HttpResponse response = response(200);
+        response.addHeader("Content-Location", CONTENT_LOCATION);
+
+        assertEquals(CONTENT_LOCATION, HttpResponseExtractor.parse(response).getUrl());
+    }
+
+    @Test
+    public void missingLocationGivesNoUrl() throws FhirBundleSubmissionFailException {
+        assertNull(HttpResponseExtractor.parse(response(201)).getUrl());
+    }
+
+    @Test
+    public void rejectsOtherStatusesAndMissingResponses() {
+        for (HttpResponse response : new HttpResponse[] { response(204), response(412), response(500), null }) {
+            try {
+                HttpResponseExtractor.parse(response);
+                fail("expected the response to be rejected");
+            } catch (FhirBundleSubmissionFailException expected) {
+            }
+        }
+    }
+
+    private static HttpResponse response(int status) {
+        return new BasicHttpResponse(HttpVersion.HTTP_1_1, status, "Status " + status);
+    }
+}
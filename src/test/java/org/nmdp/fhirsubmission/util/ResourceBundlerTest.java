@@ -0,0 +1,143 @@
+package org.nmdp.fhirsubmission.util;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import org.junit.Test;
+import org.nmdp.fhirsubmission.benchmark.WorkloadGenerator;
+import org.nmdp.fhirsubmission.benchmark.WorkloadProfile;
+import org.nmdp.fhirsubmission.object.BundleSubmission;
+import org.nmdp.hmlfhirconvertermodels.domain.fhir.Observation;
+import org.nmdp.hmlfhirconvertermodels.domain.fhir.Patient;
+import org.nmdp.hmlfhirconvertermodels.domain.fhir.Sequence;
+import org.nmdp.hmlfhirconvertermodels.domain.fhir.Specimen;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ResourceBundlerTest {
+
+    private static final int SPECIMENS = 3;
+    private static final int SEQUENCES = 2;
+
+    @Test
+    public void patientIsBundledOnceAheadOfItsSpecimens() {
+        WorkloadProfile profile = new WorkloadProfile();
+        profile.setMinSpecimensPerPatient(SPECIMENS);
+        profile.setMaxSpecimensPerPatient(SPECIMENS);
+        Patient patient = new WorkloadGenerator(profile).patient(0);
+
+        try (ResourceBundler bundler = new ResourceBundler(1)) {
+            JsonArray entries = bundler.combine(bundler.serializePatient(patient)).getAsJsonArray("entry");
+            Set<String> fullUrls = new HashSet<>();
+            int patients = 0;
+            int specimens = 0;
+
+            for (JsonElement element : entries) {
+                JsonObject entry = element.getAsJsonObject();
+                String resourceType = entry.getAsJsonObject("resource").get("resourceType").getAsString();
+
+                assertTrue("duplicate fullUrl", fullUrls.add(entry.get("fullUrl").getAsString()));
+
+                if ("Patient".equals(resourceType)) {
+                    patients++;
+                } else if ("Specimen".equals(resourceType)) {
+                    specimens++;
+                }
+            }
+
+            JsonObject first = entries.get(0).getAsJsonObject();
+
+            assertEquals(1, patients);
+            assertEquals(SPECIMENS, specimens);
+            assertEquals("Patient", first.getAsJsonObject("resource").get("resourceType").getAsString());
+            assertEquals(ConditionalCreate.forPatient(patient.getIdentifier()),
+                    first.getAsJsonObject("request").get("ifNoneExist").getAsString());
+        }
+    }
+
+    @Test
+    public void sequencesSharingAnObservedSeqAreSerializedOnce() {
+        Patient patient = patientWithObservedSeq("ACGT");
+
+        try (ResourceBundler bundler = new ResourceBundler(1)) {
+            assertEquals(1, distinctSequences(bundler.serializePatient(patient)));
+        }
+    }
+
+    @Test
+    public void sequencesWithoutAnObservedSeqAreEachSerialized() {
+        Patient patient = patientWithObservedSeq(null);
+        int sequences = 0;
+
+        for (Specimen specimen : patient.getSpecimens().getSpecimens()) {
+            for (Observation observation : specimen.getObservations().getObservations()) {
+                sequences += observation.getSequences().getSequences().size();
+            }
+        }
+
+        try (ResourceBundler bundler = new ResourceBundler(1)) {
+            assertEquals(SPECIMENS * SEQUENCES, sequences);
+            assertEquals(sequences, distinctSequences(bundler.serializePatient(patient)));
+        }
+    }
+
+    private static Patient patientWithObservedSeq(String observedSeq) {
+        WorkloadProfile profile = new WorkloadProfile();
+        profile.setMinSpecimensPerPatient(SPECIMENS);
+        profile.setMaxSpecimensPerPatient(SPECIMENS);
+        profile.setMinObservationsPerSpecimen(1);
+        profile.setMaxObservationsPerSpecimen(1);
+        profile.setSequencesPerObservation(SEQUENCES);
+        Patient patient = new WorkloadGenerator(profile).patient(0);
+
+        for (Specimen specimen : patient.getSpecimens().getSpecimens()) {
+            for (Observation observation : specimen.getObservations().getObservations()) {
+                for (Sequence sequence : observation.getSequences().getSequences()) {
+                    sequence.setObservedSeq(observedSeq);
+                }
+            }
+        }
+
+        return patient;
+    }
+
+    private static int distinctSequences(BundleSubmission bundle) {
+        Set<JsonObject> trees = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        for (List<JsonObject> sequences : bundle.getSequences().values()) {
+            trees.addAll(sequences);
+        }
+
+        return trees.size();
+    }
+}
@@ -0,0 +1,242 @@
+package org.nmdp.fhirsubmission.util;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import org.junit.Test;
+import org.nmdp.fhirsubmission.object.FhirSubmissionResponse;
+import org.nmdp.fhirsubmission.object.JournalEntry;
+import org.nmdp.fhirsubmission.object.TransactionResponse;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SubmissionJournalTest {
+
+    private static final int RECORD_OVERHEAD = Integer.BYTES + Integer.BYTES + Byte.BYTES + Long.BYTES;
+    private static final int ID_OFFSET = Integer.BYTES + Integer.BYTES + Byte.BYTES;
+    private static final long TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    @Test
+    public void recoversWhatAnInterruptedRunLeftUnacknowledged() throws IOException {
+        Path path = journalPath();
+        SubmissionJournal crashed = new SubmissionJournal(path, 0);
+        long sent = crashed.pending(bytes("sent"));
+        long pending = crashed.pending(bytes("pending"));
+        long finished = crashed.pending(bytes("finished"));
+        TransactionResponse results = new TransactionResponse();
+
+        results.addResult("urn:uuid:patient", new FhirSubmissionResponse("1", "Patient/1", true));
+        crashed.sent(sent);
+        crashed.chunkAcknowledged(sent, 0, results);
+        crashed.sent(finished);
+        crashed.acknowledged(finished);
+
+        // Not closed: the records are only in the mapped file, as when the JVM dies.
+        try (SubmissionJournal journal = new SubmissionJournal(path, 0)) {
+            List<JournalEntry> entries = journal.getUnacknowledged();
+
+            assertEquals(2, entries.size());
+            assertEquals(sent, entries.get(0).getId());
+            assertEquals(JournalEntry.State.SENT, entries.get(0).getState());
+            assertArrayEquals(bytes("sent"), entries.get(0).getBundle());
+            assertEquals(Collections.singleton(0), entries.get(0).getAcknowledgedChunks());
+            assertEquals("Patient/1", entries.get(0).getAcknowledged().getLocation("urn:uuid:patient"));
+            assertEquals(pending, entries.get(1).getId());
+            assertEquals(JournalEntry.State.PENDING, entries.get(1).getState());
+            assertTrue(entries.get(1).getAcknowledgedChunks().isEmpty());
+            assertTrue("a new transaction must not reuse a journaled id", journal.pending(bytes("next")) > finished);
+        }
+    }
+
+    @Test
+    public void doesNotReportTransactionsItJournaled() throws IOException {
+        try (SubmissionJournal journal = new SubmissionJournal(journalPath(), 0)) {
+            long id = journal.pending(bytes("live"));
+
+            journal.sent(id);
+
+            assertTrue(journal.getUnacknowledged().isEmpty());
+        }
+    }
+
+    @Test
+    public void stopsReplayAtACorruptRecordAndAppendsFromThere() throws IOException {
+        Path path = journalPath();
+
+        try (SubmissionJournal journal = new SubmissionJournal(path, 0)) {
+            journal.pending(bytes("first"));
+            journal.pending(bytes("second"));
+        }
+
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            long body = RECORD_OVERHEAD + bytes("first").length + RECORD_OVERHEAD;
+
+            file.seek(body);
+            file.write('S');
+        }
+
+        assertReplaysFirstThenAppended(path);
+    }
+
+    @Test
+    public void stopsReplayAtATornRecordAndAppendsFromThere() throws IOException {
+        Path path = journalPath();
+
+        try (SubmissionJournal journal = new SubmissionJournal(path, 0)) {
+            journal.pending(bytes("first"));
+            journal.pending(bytes("second"));
+        }
+
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(RECORD_OVERHEAD + bytes("first").length + RECORD_OVERHEAD + 2);
+        }
+
+        assertReplaysFirstThenAppended(path);
+    }
+
+    @Test
+    public void dropsFinishedTransactionsWhenOpened() throws IOException {
+        Path path = journalPath();
+        long live;
+
+        try (SubmissionJournal journal = new SubmissionJournal(path, 0)) {
+            for (int i = 0; i < 50; i++) {
+                long id = journal.pending(bytes("finished " + i));
+
+                journal.sent(id);
+                journal.acknowledged(id);
+            }
+
+            live = journal.pending(bytes("live"));
+        }
+
+        try (SubmissionJournal journal = new SubmissionJournal(path, 0)) {
+            assertEquals(1, journal.getUnacknowledged().size());
+        }
+
+        assertEquals(live, firstRecordId(path));
+        assertEquals(RECORD_OVERHEAD + bytes("live").length, intactLength(path));
+    }
+
+    @Test
+    public void compactsOnceFinishedRecordsAddUp() throws Exception {
+        Path path = journalPath();
+        long live;
+
+        try (SubmissionJournal journal = new SubmissionJournal(path, 0, 1)) {
+            long finished = journal.pending(bytes("finished"));
+
+            live = journal.pending(bytes("live"));
+            journal.sent(live);
+            journal.acknowledged(finished);
+
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+
+            while (firstRecordId(path) != live && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            assertEquals(live, firstRecordId(path));
+            journal.chunkAcknowledged(live, 0, new TransactionResponse());
+        }
+
+        try (SubmissionJournal journal = new SubmissionJournal(path, 0)) {
+            List<JournalEntry> entries = journal.getUnacknowledged();
+
+            assertEquals(1, entries.size());
+            assertEquals(live, entries.get(0).getId());
+            assertEquals(JournalEntry.State.SENT, entries.get(0).getState());
+            assertEquals(Collections.singleton(0), entries.get(0).getAcknowledgedChunks());
+        }
+    }
+
+    private static void assertReplaysFirstThenAppended(Path path) throws IOException {
+        try (SubmissionJournal journal = new SubmissionJournal(path, 0)) {
+            List<JournalEntry> entries = journal.getUnacknowledged();
+
+            assertEquals(1, entries.size());
+            assertArrayEquals(bytes("first"), entries.get(0).getBundle());
+            journal.pending(bytes("third"));
+        }
+
+        try (SubmissionJournal journal = new SubmissionJournal(path, 0)) {
+            List<JournalEntry> entries = journal.getUnacknowledged();
+
+            assertEquals(2, entries.size());
+            assertArrayEquals(bytes("first"), entries.get(0).getBundle());
+            assertArrayEquals(bytes("third"), entries.get(1).getBundle());
+        }
+    }
+
+    private static long firstRecordId(Path path) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "r")) {
+            file.seek(ID_OFFSET);
+
+            return file.readLong();
+        }
+    }
+
+    /**
+     * Length of the records before the zeros of the mapped segment.
+     */
+    private static long intactLength(Path path) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "r")) {
+            long end = 0;
+            int length;
+
+            while (end + Integer.BYTES <= file.length() && (length = readLength(file, end)) > 0) {
+                end += Integer.BYTES + Integer.BYTES + length;
+            }
+
+            return end;
+        }
+    }
+
+    private static int readLength(RandomAccessFile file, long offset) throws IOException {
+        file.seek(offset);
+
+        return file.readInt();
+    }
+
+    private static Path journalPath() throws IOException {
+        Path directory = Files.createTempDirectory("journal");
+
+        directory.toFile().deleteOnExit();
+
+        return directory.resolve("submission.journal");
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,206 @@
+package org.nmdp.fhirsubmission.util;
+
+/**
+ * fhir-submission
+ * Copyright (c) 2012-2017 National Marrow Donor Program (NMDP)
+ * <p>
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published
+ * by the Free Software Foundation; either version 3 of the License, or (at
+ * your option) any later version.
+ * <p>
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; with out even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ * <p>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library;  if not, write to the Free Software Foundation,
+ * Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA.
+ * <p>
+ * > http://www.fsf.org/licensing/licenses/lgpl.html
+ * > http://www.opensource.org/licenses/lgpl-license.php
+ */
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import org.junit.Test;
+import org.nmdp.fhirsubmission.http.Post;
+import org.nmdp.fhirsubmission.object.FhirSubmissionResponse;
+import org.nmdp.fhirsubmission.object.TransactionResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TransactionBatcherTest {
+
+    private static final String URL = "http://fhir.example.org/Bundle";
+    private static final long LINGER_MILLIS = 60000;
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Test
+    public void fansBatchResponseOutToEachTransaction() throws Exception {
+        RecordingPost post = new RecordingPost();
+
+        try (TransactionBatcher batcher = new TransactionBatcher(post, URL, 100, Long.MAX_VALUE, LINGER_MILLIS)) {
+            CompletableFuture<TransactionResponse> first = batcher.submit(bundle("urn:uuid:a1", "urn:uuid:a2"));
+            CompletableFuture<TransactionResponse> second = batcher.submit(bundle("urn:uuid:b1"));
+
+            batcher.flush();
+
+            assertEquals(1, post.bundles.size());
+            assertEquals(3, post.bundles.get(0).getAsJsonArray("entry").size());
+
+            TransactionResponse firstResponse = first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            TransactionResponse secondResponse = second.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+            assertEquals(2, firstResponse.getResults().size());
+            assertEquals("http://fhir.example.org/urn:uuid:a2", firstResponse.getLocation("urn:uuid:a2"));
+            assertEquals(1, secondResponse.getResults().size());
+            assertEquals("http://fhir.example.org/urn:uuid:b1", secondResponse.getLocation("urn:uuid:b1"));
+        } finally {
+            post.close();
+        }
+    }
+
+    @Test
+    public void collidingFullUrlsStartNewBatch() throws Exception {
+        RecordingPost post = new RecordingPost();
+
+        try (TransactionBatcher batcher = new TransactionBatcher(post, URL, 100, Long.MAX_VALUE, LINGER_MILLIS)) {
+            CompletableFuture<TransactionResponse> first = batcher.submit(bundle("urn:uuid:p", "urn:uuid:s1"));
+            CompletableFuture<TransactionResponse> second = batcher.submit(bundle("urn:uuid:p", "urn:uuid:s2"));
+
+            assertEquals("the colliding transaction must push the first batch out", 1, post.bundles.size());
+
+            batcher.flush();
+
+            assertEquals(2, post.bundles.size());
+            assertEquals(2, first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).getResults().size());
+            assertEquals(2, second.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).getResults().size());
+
+            for (JsonObject bundle : post.bundles) {
+                assertEquals(fullUrls(bundle).size(), (long) fullUrls(bundle).stream().distinct().count());
+            }
+        } finally {
+            post.close();
+        }
+    }
+
+    @Test
+    public void fullBatchIsSentWithoutWaitingForLinger() throws Exception {
+        RecordingPost post = new RecordingPost();
+
+        try (TransactionBatcher batcher = new TransactionBatcher(post, URL, 3, Long.MAX_VALUE, LINGER_MILLIS)) {
+            CompletableFuture<TransactionResponse> first = batcher.submit(bundle("urn:uuid:a1", "urn:uuid:a2"));
+            CompletableFuture<TransactionResponse> second = batcher.submit(bundle("urn:uuid:b1"));
+
+            assertEquals(1, post.bundles.size());
+            assertEquals(2, first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).getResults().size());
+            assertEquals(1, second.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).getResults().size());
+        } finally {
+            post.close();
+        }
+    }
+
+    @Test
+    public void refusedBatchFailsEveryTransaction() throws Exception {
+        RecordingPost post = new RecordingPost();
+        post.refuse = true;
+
+        try (TransactionBatcher batcher = new TransactionBatcher(post, URL, 100, Long.MAX_VALUE, LINGER_MILLIS)) {
+            List<CompletableFuture<TransactionResponse>> responses = new ArrayList<>();
+
+            responses.add(batcher.submit(bundle("urn:uuid:a1")));
+            responses.add(batcher.submit(bundle("urn:uuid:b1")));
+            batcher.flush();
+
+            for (CompletableFuture<TransactionResponse> response : responses) {
+                assertTrue(response.isDone());
+
+                try {
+                    response.get();
+                    fail("a refused batch must fail its transactions");
+                } catch (ExecutionException ex) {
+                    assertTrue(ex.getCause() instanceof RejectedExecutionException);
+                }
+            }
+
+            post.refuse = false;
+            CompletableFuture<TransactionResponse> next = batcher.submit(bundle("urn:uuid:c1"));
+            batcher.flush();
+
+            assertEquals(1, next.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).getResults().size());
+        } finally {
+            post.close();
+        }
+    }
+
+    private static JsonObject bundle(String... fullUrls) {
+        JsonObject bundle = new JsonObject();
+        JsonArray entries = new JsonArray();
+
+        for (String fullUrl : fullUrls) {
+            JsonObject entry = new JsonObject();
+            JsonObject resource = new JsonObject();
+
+            resource.addProperty("resourceType", "Basic");
+            entry.addProperty("fullUrl", fullUrl);
+            entry.add("resource", resource);
+            entries.add(entry);
+        }
+
+        bundle.add("entry", entries);
+
+        return bundle;
+    }
+
+    private static List<String> fullUrls(JsonObject bundle) {
+        List<String> fullUrls = new ArrayList<>();
+
+        for (JsonElement entry : bundle.getAsJsonArray("entry")) {
+            fullUrls.add(entry.getAsJsonObject().get("fullUrl").getAsString());
+        }
+
+        return fullUrls;
+    }
+
+    /**
+     * Answers every transaction at once with a location per entry, or refuses it outright the way
+     * a shut-down sender does.
+     */
+    private static class RecordingPost extends Post {
+
+        private final List<JsonObject> bundles = new ArrayList<>();
+        private volatile boolean refuse;
+
+        @Override
+        public synchronized CompletableFuture<TransactionResponse> asyncPostTransaction(String url, List<JsonObject> chunks) {
+            if (refuse) {
+                throw new RejectedExecutionException("sender is shut down");
+            }
+
+            TransactionResponse response = new TransactionResponse();
+
+            for (JsonObject chunk : chunks) {
+                bundles.add(chunk);
+
+                for (String fullUrl : fullUrls(chunk)) {
+                    response.addResult(fullUrl, new FhirSubmissionResponse(fullUrl, "http://fhir.example.org/" + fullUrl));
+                }
+            }
+
+            return CompletableFuture.completedFuture(response);
+        }
+    }
+}